@@ -0,0 +1,380 @@
+package cspSolver;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generalized arc consistency for the NotEquals constraints of a
+ * ConstraintNetwork, treating each constraint as a single all-different
+ * constraint (Regin's algorithm) instead of a set of pairwise NotEquals.
+ *
+ * For each constraint a maximum matching between its variables and values
+ * is kept. A value can stay in a domain only if it belongs to some maximum
+ * matching: either the value and the variable are in the same strongly
+ * connected component of the matching graph, or the value is reachable
+ * from a value no variable is matched to. Everything else is removed.
+ *
+ * Matchings are kept between calls. Removing values only breaks the edges
+ * that were removed, and undo only adds edges back, so each call repairs
+ * the previous matching with augmenting paths from the variables that lost
+ * their matched value. Registered as a DomainListener on the network's
+ * Trail, only constraints with removed values are filtered again.
+ */
+public class AllDifferentPropagator implements DomainListener {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final int NONE = -1;
+
+	private ConstraintNetwork network;
+	private int numValues;				//values are 1..numValues-1
+
+	private int[][] varToValue;			//[constraint index][position in vars], 0 if unmatched
+	private int[][] valueToVar;			//[constraint index][value], NONE if unmatched
+
+	//dirty constraints, a ring buffer holding each constraint at most once
+	private Constraint[] queue;
+	private boolean[] isQueued;
+	private int queueHead;
+	private int queueSize;
+	private Constraint filtering;		//constraint being filtered, not marked dirty by its own removals
+
+	//work arrays for one constraint. Graph nodes are the positions of the
+	//variables (0..n-1) followed by the values (n+value).
+	private int[] valueStamp;
+	private int stamp;
+	private int[] nodeIndex;
+	private int[] lowlink;
+	private int[] component;
+	private boolean[] onStack;
+	private int[] stack;
+	private int stackSize;
+	private int counter;
+	private boolean[] reachable;
+	private int[] removeVar;
+	private int[] removeValue;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * Every constraint starts out dirty, so the first call to propagate()
+	 * filters the whole network.
+	 * @param network network to propagate
+	 */
+	public AllDifferentPropagator(ConstraintNetwork network)
+	{
+		this.network = network;
+		List<Constraint> constraints = network.getConstraints();
+
+		numValues = 1;
+		int maxVars = 0;
+		for(Variable v : network.getVariables())
+		{
+			for(int value = v.getDomain().lowestValue(); value != 0; value = v.getDomain().nextValue(value))
+			{
+				numValues = Math.max(numValues, value + 1);
+			}
+		}
+		for(Constraint c : constraints)
+		{
+			maxVars = Math.max(maxVars, c.size());
+		}
+
+		varToValue = new int[constraints.size()][];
+		valueToVar = new int[constraints.size()][numValues];
+		for(Constraint c : constraints)
+		{
+			varToValue[c.getIndex()] = new int[c.size()];
+			Arrays.fill(valueToVar[c.getIndex()], NONE);
+		}
+
+		queue = new Constraint[constraints.size()];
+		isQueued = new boolean[constraints.size()];
+		for(Constraint c : constraints)
+		{
+			markDirty(c);
+		}
+
+		int numNodes = maxVars + numValues;
+		valueStamp = new int[numValues];
+		nodeIndex = new int[numNodes];
+		lowlink = new int[numNodes];
+		component = new int[numNodes];
+		onStack = new boolean[numNodes];
+		stack = new int[numNodes];
+		reachable = new boolean[numNodes];
+		removeVar = new int[maxVars * numValues];
+		removeValue = new int[maxVars * numValues];
+	}
+
+	//===============================================================================
+	// Propagation
+	//===============================================================================
+
+	/**
+	 * Filters dirty constraints until none are left. Removals go onto the
+	 * trail. On failure the pending work is dropped, as the caller is
+	 * expected to undo back past the changes that caused it.
+	 * @return false if some constraint has no matching covering all of its variables
+	 */
+	public boolean propagate()
+	{
+		while(queueSize > 0)
+		{
+			Constraint c = queue[queueHead];
+			isQueued[c.getIndex()] = false;
+			queueHead = (queueHead + 1) % queue.length;
+			queueSize--;
+
+			if(!filter(c))
+			{
+				c.incrementWeight();
+				clear();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if some constraint still has to be filtered
+	 */
+	public boolean hasPendingWork()
+	{
+		return queueSize > 0;
+	}
+
+	/**
+	 * Drops all pending work.
+	 */
+	public void clear()
+	{
+		for(; queueSize > 0; queueSize--)
+		{
+			isQueued[queue[queueHead].getIndex()] = false;
+			queueHead = (queueHead + 1) % queue.length;
+		}
+	}
+
+	private boolean filter(Constraint c)
+	{
+		List<Variable> vars = c.vars;
+		int n = vars.size();
+		int[] toValue = varToValue[c.getIndex()];
+		int[] toVar = valueToVar[c.getIndex()];
+
+		//repair the matching
+		for(int i = 0; i < n; i++)
+		{
+			if(toValue[i] != 0 && !vars.get(i).getDomain().contains(toValue[i]))
+			{
+				toVar[toValue[i]] = NONE;
+				toValue[i] = 0;
+			}
+		}
+		for(int i = 0; i < n; i++)
+		{
+			if(toValue[i] == 0)
+			{
+				stamp++;
+				if(!augment(vars, toValue, toVar, i))
+				{
+					return false;
+				}
+			}
+		}
+
+		//strongly connected components and values reachable from free values
+		int numNodes = n + numValues;
+		for(int node = 0; node < numNodes; node++)
+		{
+			nodeIndex[node] = NONE;
+			onStack[node] = false;
+			reachable[node] = false;
+		}
+		counter = 0;
+		stackSize = 0;
+		for(int node = 0; node < numNodes; node++)
+		{
+			if(nodeIndex[node] == NONE)
+			{
+				strongConnect(vars, toValue, toVar, node);
+			}
+		}
+		for(int value = 1; value < numValues; value++)
+		{
+			if(toVar[value] == NONE && !reachable[n + value])
+			{
+				markReachable(vars, toValue, toVar, n + value);
+			}
+		}
+
+		//collect first, removing changes the domains being walked
+		int numRemovals = 0;
+		for(int i = 0; i < n; i++)
+		{
+			Domain d = vars.get(i).getDomain();
+			for(int value = d.lowestValue(); value != 0; value = d.nextValue(value))
+			{
+				if(value != toValue[i] && !reachable[n + value] && component[n + value] != component[i])
+				{
+					removeVar[numRemovals] = i;
+					removeValue[numRemovals] = value;
+					numRemovals++;
+				}
+			}
+		}
+		filtering = c;
+		for(int r = 0; r < numRemovals; r++)
+		{
+			vars.get(removeVar[r]).removeValueFromDomain(removeValue[r]);
+		}
+		filtering = null;
+		return true;
+	}
+
+	/**
+	 * Kuhn's augmenting path search from the variable at position i.
+	 */
+	private boolean augment(List<Variable> vars, int[] toValue, int[] toVar, int i)
+	{
+		Domain d = vars.get(i).getDomain();
+		for(int value = d.lowestValue(); value != 0; value = d.nextValue(value))
+		{
+			if(valueStamp[value] == stamp)
+			{
+				continue;
+			}
+			valueStamp[value] = stamp;
+			if(toVar[value] == NONE || augment(vars, toValue, toVar, toVar[value]))
+			{
+				toValue[i] = value;
+				toVar[value] = i;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tarjan's algorithm over the matching graph: a variable points to its
+	 * matched value, a value points to every other variable that can take it.
+	 */
+	private void strongConnect(List<Variable> vars, int[] toValue, int[] toVar, int node)
+	{
+		int n = vars.size();
+		nodeIndex[node] = counter;
+		lowlink[node] = counter;
+		counter++;
+		stack[stackSize++] = node;
+		onStack[node] = true;
+
+		if(node < n)
+		{
+			if(toValue[node] != 0)
+			{
+				visitEdge(vars, toValue, toVar, node, n + toValue[node]);
+			}
+		}
+		else
+		{
+			int value = node - n;
+			for(int i = 0; i < n; i++)
+			{
+				if(toValue[i] != value && vars.get(i).getDomain().contains(value))
+				{
+					visitEdge(vars, toValue, toVar, node, i);
+				}
+			}
+		}
+
+		if(lowlink[node] == nodeIndex[node])
+		{
+			int member;
+			do
+			{
+				member = stack[--stackSize];
+				onStack[member] = false;
+				component[member] = node;
+			} while(member != node);
+		}
+	}
+
+	private void visitEdge(List<Variable> vars, int[] toValue, int[] toVar, int node, int successor)
+	{
+		if(nodeIndex[successor] == NONE)
+		{
+			strongConnect(vars, toValue, toVar, successor);
+			lowlink[node] = Math.min(lowlink[node], lowlink[successor]);
+		}
+		else if(onStack[successor])
+		{
+			lowlink[node] = Math.min(lowlink[node], nodeIndex[successor]);
+		}
+	}
+
+	/**
+	 * Marks every node reachable from <tt>node</tt> in the matching graph.
+	 */
+	private void markReachable(List<Variable> vars, int[] toValue, int[] toVar, int node)
+	{
+		int n = vars.size();
+		reachable[node] = true;
+		if(node < n)
+		{
+			if(toValue[node] != 0 && !reachable[n + toValue[node]])
+			{
+				markReachable(vars, toValue, toVar, n + toValue[node]);
+			}
+		}
+		else
+		{
+			int value = node - n;
+			for(int i = 0; i < n; i++)
+			{
+				if(!reachable[i] && toValue[i] != value && vars.get(i).getDomain().contains(value))
+				{
+					markReachable(vars, toValue, toVar, i);
+				}
+			}
+		}
+	}
+
+	//===============================================================================
+	// DomainListener
+	//===============================================================================
+
+	@Override
+	public void valueRemoved(Variable v, int value) {
+		for(Constraint c : network.getConstraintsContainingVariable(v))
+		{
+			if(c != filtering)
+			{
+				markDirty(c);
+			}
+		}
+	}
+
+	@Override
+	public void valueRestored(Variable v, int value) {
+		//the matching stays valid when edges come back
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	private void markDirty(Constraint c)
+	{
+		if(!isQueued[c.getIndex()])
+		{
+			isQueued[c.getIndex()] = true;
+			queue[(queueHead + queueSize) % queue.length] = c;
+			queueSize++;
+		}
+	}
+}
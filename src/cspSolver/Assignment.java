@@ -51,6 +51,11 @@ public class Assignment implements Comparable<Assignment>{
 	// Modifiers
 	//===============================================================================
 	
+	public void setVariable(Variable v)
+	{
+		this.variable = v;
+	}
+	
 	public void setValue(int val)
 	{
 		this.value = val;
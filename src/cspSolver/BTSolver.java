@@ -1,8 +1,25 @@
 package cspSolver;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import sudoku.Converter;
 import sudoku.SudokuFile;
@@ -10,37 +27,111 @@ import sudoku.SudokuFile;
  * Backtracking solver. 
  *
  */
-public class BTSolver implements Runnable{
+public class BTSolver implements Solver{
 
 	//===============================================================================
 	// Properties
 	//===============================================================================
 
 	private ConstraintNetwork network;
-	private static Trail trail = Trail.getTrail();
+	private Trail trail;
 	private boolean hasSolution = false;
 	private SudokuFile sudokuGrid;
 
-	private int numAssignments;
-	private int numBacktracks;
+	private long numAssignments;
+	private long numBacktracks;
+	private long preprocessingStartTime;
+	private long preprocessingEndTime;
 	private long startTime;
 	private long endTime;
 	
-	public enum VariableSelectionHeuristic 	{ None, MinimumRemainingValue, Degree, MRV_DH };
+	public enum VariableSelectionHeuristic 	{ None, MinimumRemainingValue, Degree, MRV_DH, DomWdeg };
 	public enum ValueSelectionHeuristic 		{ None, LeastConstrainingValue };
-	public enum ConsistencyCheck				{ None, ForwardChecking, ArcConsistency };
+	public enum ConsistencyCheck				{ None, ForwardChecking, ArcConsistency, UnitPropagation, AllDifferent };
+	public enum RestartSchedule				{ None, Luby, Geometric };
 	
 	private VariableSelectionHeuristic varHeuristics;
 	private ValueSelectionHeuristic valHeuristics;
 	private ConsistencyCheck cChecks;
+	private boolean arcConsistencyPreprocessing;
+	private boolean backjumping;
+	private int nogoodLimit;
+	private RestartSchedule restartSchedule = RestartSchedule.None;
+	private long restartBase = 100;		//assignments allowed to the first run
+	private long randomSeed;
+	private SearchRandom random;		//breaks ties while restarting, reseeded with randomSeed + numRestarts at each run
+	private long numRestarts;
+	private long runAssignments;		//assignments since the latest restart
+	private long runBudget;				//assignments allowed to the current run
+	private int parallelism = 1;
+	private int splitDepth = 4;
+	private AtomicBoolean stopFlag;		//shared by the workers of a parallel search, set once one of them succeeds
+	private SearchMonitor monitor;		//null unless instrumented
+	private long conversionNanos;
+	private long preprocessingNanos;
+	private long searchNanos;
+	private long outputNanos;
+	
+	private enum SearchState { NotStarted, Running, Finished };
+	private SearchState state = SearchState.NotStarted;
+	private volatile boolean paused;
+	
+	//explicit search stack, one frame per decision. The trail mark of a frame is
+	//the breadcrumb placed before the value it is trying.
+	private Variable[] stackVariables;
+	private List<List<Integer>> stackValues;	//values of each frame's variable, in the order they are tried
+	private int[] stackNextValue;				//position of the next value to try
+	private int stackSize;
+	private boolean descend;					//true once the latest assignment has passed its consistency check
+	
+	private static final int CHECKPOINT_MAGIC = 0x4254434B;	//"BTCK"
+	private static final int CHECKPOINT_VERSION = 3;
+	private static final double GEOMETRIC_FACTOR = 1.5;	//growth of the run budget with the Geometric schedule
+	
+	private Variable lastAssigned;		//variable assigned by the latest decision, null before search
+	private Variable[] propagationQueue;
+	private DomainSizeBuckets sizeBuckets;	//kept in sync through the trail while solving with MRV or degree
+	private UnitPropagator unitPropagator;	//kept in sync through the trail while solving with UnitPropagation or AllDifferent
+	private AllDifferentPropagator allDifferentPropagator;	//kept in sync through the trail while solving with AllDifferent
+	private Backjumper backjumper;			//kept in sync through the trail while backjumping with ForwardChecking
+	
+	//dirty constraint queue used by arc consistency, a ring buffer holding each constraint at most once
+	private Constraint[] constraintQueue;
+	private boolean[] isQueued;
+	private int queueHead;
+	private int queueSize;
 	//===============================================================================
 	// Constructors
 	//===============================================================================
 
 	public BTSolver(SudokuFile sf)
 	{
+		long conversionStart = System.nanoTime();
 		this.network = Converter.SudokuFileToConstraintNetwork(sf);
+		this.conversionNanos = System.nanoTime() - conversionStart;
+		this.trail = network.getTrail();
+		this.sudokuGrid = sf;
+		this.propagationQueue = new Variable[network.getVariables().size()];
+		this.constraintQueue = new Constraint[network.getConstraints().size()];
+		this.isQueued = new boolean[network.getConstraints().size()];
+		numAssignments = 0;
+		numBacktracks = 0;
+	}
+
+	/**
+	 * Solves a network that has already been built, e.g. a clone made by a
+	 * parallel search. 
+	 * @param network network to solve, with its lookup tables built
+	 * @param sf puzzle the network stands for, used for its dimensions
+	 */
+	public BTSolver(ConstraintNetwork network, SudokuFile sf)
+	{
+		this.network = network;
+		this.trail = network.getTrail();
 		this.sudokuGrid = sf;
+		this.propagationQueue = new Variable[network.getVariables().size()];
+		this.constraintQueue = new Constraint[network.getConstraints().size()];
+		this.isQueued = new boolean[network.getConstraints().size()];
 		numAssignments = 0;
 		numBacktracks = 0;
 	}
@@ -63,6 +154,98 @@ public class BTSolver implements Runnable{
 	{
 		this.cChecks = cc;
 	}
+	
+	/**
+	 * @param enabled if true, the network is made arc consistent once before search starts
+	 */
+	public void setArcConsistencyPreprocessing(boolean enabled)
+	{
+		this.arcConsistencyPreprocessing = enabled;
+	}
+	
+	/**
+	 * @param enabled if true, a dead end jumps back to the deepest decision 
+	 * that caused it, instead of the previous one. Only used with 
+	 * ForwardChecking, other consistency checks backtrack chronologically.
+	 */
+	public void setBackjumping(boolean enabled)
+	{
+		this.backjumping = enabled;
+	}
+	
+	/**
+	 * @param limit number of nogoods learned by backjumping that are kept and
+	 * checked by forward checking, 0 to learn none
+	 */
+	public void setNogoodLimit(int limit)
+	{
+		this.nogoodLimit = limit;
+	}
+	
+	/**
+	 * @param schedule restart schedule, None to search in a single run. While 
+	 * restarting, ties of the variable and value heuristics are broken at 
+	 * random, so each run explores a different part of the tree. Constraint 
+	 * weights and learned nogoods are kept from one run to the next.
+	 */
+	public void setRestartSchedule(RestartSchedule schedule)
+	{
+		this.restartSchedule = schedule;
+	}
+	
+	/**
+	 * @param assignments assignments allowed to the first run, later runs get 
+	 * this many times the next term of the restart schedule
+	 */
+	public void setRestartBase(long assignments)
+	{
+		this.restartBase = Math.max(1, assignments);
+	}
+	
+	/**
+	 * @param seed seed of the tie breaking used while restarting
+	 */
+	public void setRandomSeed(long seed)
+	{
+		this.randomSeed = seed;
+	}
+	
+	/**
+	 * @param numThreads number of threads searching at once. Above 1, the top 
+	 * of the search tree is split into ForkJoin tasks, each searching its own 
+	 * clone of the network with the same heuristics.
+	 */
+	public void setParallelism(int numThreads)
+	{
+		this.parallelism = numThreads;
+	}
+	
+	/**
+	 * @param depth number of decisions after which a parallel search stops 
+	 * splitting and searches the subtree sequentially
+	 */
+	public void setSplitDepth(int depth)
+	{
+		this.splitDepth = depth;
+	}
+	
+	/**
+	 * @param stop flag that makes the search give up once set. The search sets 
+	 * it when it finds a solution.
+	 */
+	void setStopFlag(AtomicBoolean stop)
+	{
+		this.stopFlag = stop;
+	}
+	
+	/**
+	 * @param monitor receives the measurements of the next call to solve(), 
+	 * null to measure nothing. A parallel search only reports its phases.
+	 */
+	public void setSearchMonitor(SearchMonitor monitor)
+	{
+		this.monitor = monitor;
+	}
 	//===============================================================================
 	// Accessors
 	//===============================================================================
@@ -88,6 +271,10 @@ public class BTSolver implements Runnable{
 		System.out.println("Time taken:" + (endTime-startTime) + " ms");
 		System.out.println("Number of assignments: " + numAssignments);
 		System.out.println("Number of backtracks: " + numBacktracks);
+		if(restartSchedule != RestartSchedule.None)
+		{
+			System.out.println("Number of restarts: " + numRestarts);
+		}
 	}
 
 	/**
@@ -99,6 +286,16 @@ public class BTSolver implements Runnable{
 		return endTime-startTime;
 	}
 	
+	public long getPreprocessingStartTime()
+	{
+		return preprocessingStartTime;
+	}
+	
+	public long getPreprocessingEndTime()
+	{
+		return preprocessingEndTime;
+	}
+	
 	public long getStartTime()
 	{
 		return startTime;
@@ -109,15 +306,20 @@ public class BTSolver implements Runnable{
 		return endTime;
 	}
 
-	public int getNumAssignments()
+	public long getNumAssignments()
 	{
 		return numAssignments;
 	}
 
-	public int getNumBacktracks()
+	public long getNumBacktracks()
 	{
 		return numBacktracks;
 	}
+	
+	public long getNumRestarts()
+	{
+		return numRestarts;
+	}
 
 	public ConstraintNetwork getNetwork()
 	{
@@ -137,18 +339,36 @@ public class BTSolver implements Runnable{
 		boolean isConsistent = false;
 		switch(cChecks)
 		{
-		case None: 				isConsistent = assignmentsCheck();
+		case None: 				isConsistent = needsPrunedDomains() ? forwardChecking() : assignmentsCheck();
 		break;
 		case ForwardChecking: 	isConsistent = forwardChecking();
 		break;
 		case ArcConsistency: 	isConsistent = arcConsistency();
 		break;
+		case UnitPropagation: 	isConsistent = unitPropagator.propagate();
+		break;
+		case AllDifferent: 		isConsistent = allDifferentPropagation();
+		break;
 		default: 				isConsistent = assignmentsCheck();
 		break;
 		}
 		return isConsistent;
 	}
 	
+	/**
+	 * The size based heuristics need the values of assigned variables removed
+	 * from their neighbors, so with no consistency check selected the search
+	 * runs forward checking anyway, and backtracks on its failures. These 
+	 * also raise the weight of the failing constraint for dom/wdeg.
+	 */
+	private boolean needsPrunedDomains()
+	{
+		return varHeuristics == VariableSelectionHeuristic.MinimumRemainingValue 
+				|| varHeuristics == VariableSelectionHeuristic.Degree 
+				|| varHeuristics == VariableSelectionHeuristic.MRV_DH 
+				|| varHeuristics == VariableSelectionHeuristic.DomWdeg;
+	}
+	
 	/**
 	 * default consistency check. Ensures no two variables are assigned to the same value.
 	 * @return true if consistent, false otherwise. 
@@ -159,11 +379,16 @@ public class BTSolver implements Runnable{
 		{
 			if(v.isAssigned())
 			{
-				for(Variable vOther : network.getNeighborsOfVariable(v))
+				int value = v.getDomain().lowestValue();
+				for(Constraint c : network.getConstraintsContainingVariable(v))
 				{
-					if (v.getAssignment() == vOther.getAssignment())
+					for(Variable vOther : c.vars)
 					{
-						return false;
+						if (vOther != v && vOther.isAssigned() && vOther.getDomain().contains(value))
+						{
+							c.incrementWeight();
+							return false;
+						}
 					}
 				}
 			}
@@ -172,21 +397,70 @@ public class BTSolver implements Runnable{
 	}
 	
 	/**
-	 * TODO: Implement forward checking. 
+	 * Incremental forward checking. Removes the value of the last assigned 
+	 * variable from its neighbors, and keeps going from every neighbor that 
+	 * is left with a single value. Before search starts (no last assignment)
+	 * every assigned variable is used as a starting point. 
+	 * Removals go onto the trail, so they are undone with the assignment.
+	 * @return false as soon as a domain is wiped out or two neighbors hold the same value.
 	 */
 	private boolean forwardChecking()
 	{
-		for(Variable v : network.getVariables()){
-			if(v.isAssigned()){
-				for(Variable vOther : network.getNeighborsOfVariable(v)){
-					if (v.getAssignment() == vOther.getAssignment())
+		int head = 0;
+		int tail = 0;
+		if(lastAssigned == null)
+		{
+			for(Variable v : network.getVariables())
+			{
+				if(v.isAssigned())
+				{
+					propagationQueue[tail++] = v;
+				}
+			}
+		}
+		else
+		{
+			propagationQueue[tail++] = lastAssigned;
+		}
+		
+		while(head < tail)
+		{
+			Variable v = propagationQueue[head++];
+			int value = v.getDomain().lowestValue();
+			if(backjumper != null)
+			{
+				backjumper.propagateFrom(v);
+			}
+			for(Constraint c : network.getConstraintsContainingVariable(v))
+			{
+				for(Variable vOther : c.vars)
+				{
+					if(vOther == v || !vOther.getDomain().contains(value))
 					{
-						return false;
+						continue;
 					}
-					vOther.removeValueFromDomain(v.getAssignment());
-					if(vOther.getDomain().isEmpty()){
+					if(vOther.size() == 1)
+					{
+						c.incrementWeight();
+						if(backjumper != null)
+						{
+							backjumper.explainConflict(v, vOther);
+						}
 						return false;
 					}
+					vOther.removeValueFromDomain(value);
+					if(vOther.size() == 1)
+					{
+						propagationQueue[tail++] = vOther;
+					}
+				}
+			}
+			if(head == tail && backjumper != null)
+			{
+				tail = backjumper.propagateNogoods(propagationQueue, tail);
+				if(tail < 0)
+				{
+					return false;
 				}
 			}
 		}
@@ -194,11 +468,100 @@ public class BTSolver implements Runnable{
 	}
 	
 	/**
-	 * TODO: Implement Maintaining Arc Consistency.
+	 * Maintaining Arc Consistency (AC-3). Constraints are revised from a 
+	 * dirty queue: it starts with the constraints of the last assigned 
+	 * variable (all constraints before search starts), and every variable 
+	 * whose domain shrinks puts its constraints back in the queue, until 
+	 * nothing changes. Removals go onto the trail. 
+	 * @return false if a revision finds two neighbors left with the same single value.
 	 */
 	private boolean arcConsistency()
 	{
-		return false;
+		if(lastAssigned == null)
+		{
+			for(Constraint c : network.getConstraints())
+			{
+				enqueue(c);
+			}
+		}
+		else
+		{
+			enqueueConstraintsOf(lastAssigned);
+		}
+		
+		while(queueSize > 0)
+		{
+			Constraint c = constraintQueue[queueHead];
+			isQueued[c.getIndex()] = false;
+			queueHead = (queueHead + 1) % constraintQueue.length;
+			queueSize--;
+			
+			if(!revise(c))
+			{
+				clearConstraintQueue();
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Makes every arc of the NotEquals constraint c consistent: a value held 
+	 * by a variable with a single value is removed from all other variables.
+	 * @return false if two variables hold the same single value
+	 */
+	private boolean revise(Constraint c)
+	{
+		for(Variable v : c.vars)
+		{
+			if(v.size() != 1)
+			{
+				continue;
+			}
+			int value = v.getDomain().lowestValue();
+			for(Variable vOther : c.vars)
+			{
+				if(vOther == v || !vOther.getDomain().contains(value))
+				{
+					continue;
+				}
+				if(vOther.size() == 1)
+				{
+					c.incrementWeight();
+					return false;
+				}
+				vOther.removeValueFromDomain(value);
+				enqueueConstraintsOf(vOther);
+			}
+		}
+		return true;
+	}
+	
+	private void enqueueConstraintsOf(Variable v)
+	{
+		for(Constraint c : network.getConstraintsContainingVariable(v))
+		{
+			enqueue(c);
+		}
+	}
+	
+	private void enqueue(Constraint c)
+	{
+		if(!isQueued[c.getIndex()])
+		{
+			isQueued[c.getIndex()] = true;
+			constraintQueue[(queueHead + queueSize) % constraintQueue.length] = c;
+			queueSize++;
+		}
+	}
+	
+	private void clearConstraintQueue()
+	{
+		for(; queueSize > 0; queueSize--)
+		{
+			isQueued[constraintQueue[queueHead].getIndex()] = false;
+			queueHead = (queueHead + 1) % constraintQueue.length;
+		}
 	}
 	
 	/**
@@ -218,6 +581,8 @@ public class BTSolver implements Runnable{
 		break;
 		case MRV_DH:				next = getMRV_DH();
 		break;
+		case DomWdeg:				next = getDomWdeg();
+		break;
 		default:					next = getfirstUnassignedVariable();
 		break;
 		}
@@ -241,129 +606,97 @@ public class BTSolver implements Runnable{
 	}
 
 	/**
-	 * TODO: Implement MRV heuristic
-	 * @return variable with minimum remaining values that isn't assigned, null if all variables are assigned. 
+	 * Strongest consistency level. Alternates the cheap naked and hidden 
+	 * single propagation with full all-different filtering of the
+	 * constraints whose domains changed, until neither changes anything. 
+	 * @return false if either propagator fails
 	 */
-	private Variable getMRV()
+	private boolean allDifferentPropagation()
 	{
-		Variable to_return = null;
-		int min = Integer.MAX_VALUE;
-		
-		for(Variable v : network.getVariables()){
-			if(v.isAssigned()){
-				for(Variable vOther : network.getNeighborsOfVariable(v)){
-					vOther.removeValueFromDomain(v.getAssignment());
-				}
+		do
+		{
+			if(!unitPropagator.propagate())
+			{
+				allDifferentPropagator.clear();
+				return false;
 			}
-		}
-		
-		for (Variable v : network.getVariables()){
-			if (!v.isAssigned()){
-				int sizeofdomain = v.getDomain().size();
-				if (sizeofdomain< min ){
-					min = sizeofdomain;
-					to_return = v;
-				}
+			if(!allDifferentPropagator.propagate())
+			{
+				unitPropagator.clear();
+				return false;
 			}
-		}
-		return to_return;
+		} while(unitPropagator.hasPendingWork());
+		return true;
 	}
 	
-	private Variable getMRV_DH()
+	/**
+	 * MRV heuristic, answered from the domain size buckets.
+	 * @return variable with minimum remaining values that isn't assigned, null if all variables are assigned. 
+	 */
+	private Variable getMRV()
 	{
-		int MRVmin = Integer.MAX_VALUE;
-		int DHmax = Integer.MIN_VALUE;
-		ArrayList<Variable> to_return = new ArrayList<Variable>();
-		
-		for(Variable v : network.getVariables()){
-			if(v.isAssigned()){
-				for(Variable vOther : network.getNeighborsOfVariable(v)){
-					vOther.removeValueFromDomain(v.getAssignment());
-				}
-			}
-		}
-		
-		for (Variable v : network.getVariables()){
-			if (!v.isAssigned()){
-				int sizeofdomain = v.getDomain().size();
-				if (sizeofdomain < MRVmin ){
-					MRVmin = sizeofdomain;
-					to_return.clear();
-					to_return.add(v);
-				}
-				else if (sizeofdomain == MRVmin){
-					to_return.add(v);
-				}
-			}
-		}
-		
-		if(to_return.isEmpty()){
-			return null;
-		}
-		else if (to_return.size() == 1){
-			return to_return.get(0);
-		}
-		else{
-			Variable DH_return = null;
-			for (Variable v : to_return){
-				int sizeofassignment = 0;
-				for(Variable v1 : network.getNeighborsOfVariable(v)){
-					if(!v1.isAssigned()){
-						sizeofassignment += 1;
-					}
-				}
-				if (sizeofassignment > DHmax ){
-					DHmax = sizeofassignment;
-					DH_return = v;
-				}
-			}
-			return DH_return;
-		}
+		return sizeBuckets.getMRV();
 	}
 	
-//	private int len(List<Variable> neighborsOfVariable) {
-//		// TODO Auto-generated method stub
-////		for (Variable v:network.getVariables()){
-////			if (v.isAssigned()){
-////				return (network.getNeighborsOfVariable(v)).size();
-////			}
-////		}
-//		return 0;
-//
-//	}
+	/**
+	 * MRV heuristic, ties broken by the degree heuristic.
+	 * @return variable with minimum remaining values that is constrained by the most unassigned variables, 
+	 * null if all variables are assigned. 
+	 */
+	private Variable getMRV_DH()
+	{
+		return sizeBuckets.getMRV_DH();
+	}
 	
 	/**
-	 * TODO: Implement Degree heuristic
+	 * Degree heuristic
 	 * @return variable constrained by the most unassigned variables, null if all variables are assigned.
 	 */
 	private Variable getDegree()
 	{
-		Variable to_return = null;
-		int max = Integer.MIN_VALUE;
-		
-		for(Variable v : network.getVariables()){
-			if(v.isAssigned()){
-				for(Variable vOther : network.getNeighborsOfVariable(v)){
-					vOther.removeValueFromDomain(v.getAssignment());
-				}
+		return sizeBuckets.getMaxDegree();
+	}
+	
+	/**
+	 * dom/wdeg heuristic. The weighted degree of a variable is the sum of the
+	 * weights of its constraints, which grow each time a constraint causes a 
+	 * failure. Weights are kept for the lifetime of the network. 
+	 * @return unassigned variable with the smallest domain size / weighted degree, 
+	 * null if all variables are assigned.
+	 */
+	private Variable getDomWdeg()
+	{
+		Variable best = null;
+		int bestSize = 0;
+		int bestWdeg = 1;
+		int ties = 0;
+		for(Variable v : network.getVariables())
+		{
+			if(v.isAssigned())
+			{
+				continue;
 			}
-		}
-		
-		for (Variable v : network.getVariables()){
-			if (!v.isAssigned()){
-				int sizeofassignment = 0;
-				for(Variable v1 : network.getNeighborsOfVariable(v)){
-					if(!v1.isAssigned()){
-						sizeofassignment += 1;
-					}
-				}
-				if (sizeofassignment > max ){
-					max = sizeofassignment;
-					to_return = v;
-				}
+			int wdeg = 0;
+			for(Constraint c : network.getConstraintsContainingVariable(v))
+			{
+				wdeg += c.getWeight();
+			}
+			//size / wdeg < bestSize / bestWdeg, without dividing
+			if(best == null || (long) v.size() * bestWdeg < (long) bestSize * wdeg)
+			{
+				best = v;
+				bestSize = v.size();
+				bestWdeg = wdeg;
+				ties = 1;
+			}
+			else if(random != null && (long) v.size() * bestWdeg == (long) bestSize * wdeg && random.nextInt(++ties) == 0)
+			{
+				best = v;
+				bestSize = v.size();
+				bestWdeg = wdeg;
 			}
 		}
-		return to_return;
+		return best;
 	}
 	
 	/**
@@ -373,6 +706,10 @@ public class BTSolver implements Runnable{
 	 */
 	public List<Integer> getNextValues(Variable v)
 	{
+		if(random != null)
+		{
+			return getValuesRandomOrder(v);
+		}
 		List<Integer> orderedValues;
 		switch(valHeuristics)
 		{
@@ -386,6 +723,22 @@ public class BTSolver implements Runnable{
 		return orderedValues;
 	}
 	
+	/**
+	 * Value ordering while restarting. The values are shuffled, then LCV 
+	 * sorts them if selected, which leaves its ties in random order as the 
+	 * sort is stable. 
+	 */
+	private List<Integer> getValuesRandomOrder(Variable v)
+	{
+		List<Integer> values = v.getDomain().getValues();
+		Collections.shuffle(values, random);
+		if(valHeuristics == ValueSelectionHeuristic.LeastConstrainingValue)
+		{
+			Collections.sort(values, lcvComparator(v));
+		}
+		return values;
+	}
+	
 	/**
 	 * Default value ordering. 
 	 * @param v Variable whose values need to be ordered
@@ -393,27 +746,29 @@ public class BTSolver implements Runnable{
 	 */
 	public List<Integer> getValuesInOrder(Variable v)
 	{
-		List<Integer> values = v.getDomain().getValues();
-		
-		Comparator<Integer> valueComparator = new Comparator<Integer>(){
-
-			@Override
-			public int compare(Integer i1, Integer i2) {
-				return i1.compareTo(i2);
-			}
-		};
-		Collections.sort(values, valueComparator);
-		return values;
+		//Domain.getValues() already lists the values from lowest to highest
+		return v.getDomain().getValues();
 	}
 	
 	/**
-	 * TODO: LCV heuristic
+	 * LCV heuristic. 
+	 * @param v Variable whose values need to be ordered
+	 * @return values ordered by the number of neighbors of v that still have them, 
+	 * fewest first, ties from lowest to highest. 
 	 */
 	public List<Integer> getValuesLCVOrder(Variable v)
 	{
 		List<Integer> values = v.getDomain().getValues();
-		final Variable var = v;
-		Comparator<Integer> valueComparator = new Comparator<Integer>(){
+		Collections.sort(values, lcvComparator(v));
+		return values;
+	}
+	
+	/**
+	 * @return comparator ordering the values of v by the number of neighbors of v that still have them
+	 */
+	private Comparator<Integer> lcvComparator(final Variable var)
+	{
+		return new Comparator<Integer>(){
 
 			@Override
 			public int compare(Integer i1, Integer i2) {
@@ -430,8 +785,6 @@ public class BTSolver implements Runnable{
 				return constraint1.compareTo(constraint2);
 			}
 		};
-		Collections.sort(values, valueComparator);
-		return values;
 	}
 	/**
 	 * Called when solver finds a solution
@@ -439,48 +792,766 @@ public class BTSolver implements Runnable{
 	private void success()
 	{
 		hasSolution = true;
+		long outputStart = System.nanoTime();
 		sudokuGrid = Converter.ConstraintNetworkToSudokuFile(network, sudokuGrid.getN(), sudokuGrid.getP(), sudokuGrid.getQ());
+		outputNanos += System.nanoTime() - outputStart;
+		if(stopFlag != null)
+		{
+			stopFlag.set(true);
+		}
+	}
+	
+	private boolean isStopped()
+	{
+		return Thread.currentThread().isInterrupted() || (stopFlag != null && stopFlag.get());
 	}
 
 	//===============================================================================
-	// Solver
+	// Checkpoints
 	//===============================================================================
-
+	
 	/**
-	 * Method to start the solver
+	 * Saves a paused search to a gzipped binary file: the puzzle, the 
+	 * heuristics, the counters, the state of the restart generator, the 
+	 * constraint weights, the trail with its breadcrumbs, the decision stack, 
+	 * and with backjumping the causes, conflict sets and learned nogoods. 
+	 * Variables are stored by index. 
+	 * The file is written next to <tt>file</tt> first and then moved over it, 
+	 * so an interrupted write leaves the previous checkpoint intact. 
+	 * Must not be called while the search runs on another thread. 
+	 * @param file where to save the checkpoint
+	 * @throws IllegalStateException if the search has not started or is over
 	 */
-	public void solve()
+	public void writeCheckpoint(File file) throws IOException
 	{
-		startTime = System.currentTimeMillis();
-		try {
-			solve(0);
-		}catch (VariableSelectionException e)
+		if(state != SearchState.Running)
 		{
-			System.out.println("error with variable selection heuristic.");
+			throw new IllegalStateException("only a paused search can be saved");
 		}
-		endTime = System.currentTimeMillis();
-		Trail.clearTrail();
-	}
-
-	/**
-	 * Solver
-	 * @param level How deep the solver is in its recursion. 
-	 * @throws VariableSelectionException 
-	 */
-
-	private void solve(int level) throws VariableSelectionException
-	{
-		if(!Thread.currentThread().isInterrupted())
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))));
+		try
+		{
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			
+			int N = sudokuGrid.getN();
+			out.writeInt(N);
+			out.writeInt(sudokuGrid.getP());
+			out.writeInt(sudokuGrid.getQ());
+			int[][] board = sudokuGrid.getBoard();
+			for(int row = 0; row < N; row++)
+			{
+				for(int col = 0; col < N; col++)
+				{
+					out.writeInt(board[row][col]);
+				}
+			}
+			
+			out.writeByte(varHeuristics.ordinal());
+			out.writeByte(valHeuristics.ordinal());
+			out.writeByte(cChecks.ordinal());
+			out.writeBoolean(arcConsistencyPreprocessing);
+			out.writeBoolean(backjumping);
+			out.writeInt(nogoodLimit);
+			out.writeByte(restartSchedule.ordinal());
+			out.writeLong(restartBase);
+			out.writeLong(randomSeed);
+			
+			out.writeLong(numAssignments);
+			out.writeLong(numBacktracks);
+			out.writeLong(searchNanos);
+			out.writeLong(numRestarts);
+			out.writeLong(runAssignments);
+			out.writeLong(runBudget);
+			out.writeBoolean(random != null);
+			if(random != null)
+			{
+				out.writeLong(random.getState());
+			}
+			
+			List<Constraint> constraints = network.getConstraints();
+			out.writeInt(constraints.size());
+			for(Constraint c : constraints)
+			{
+				out.writeInt(c.getWeight());
+			}
+			
+			out.writeInt(trail.size());
+			for(int i = 0; i < trail.size(); i++)
+			{
+				out.writeInt(trail.getVariableIndex(i));
+				out.writeInt(trail.getRemovedValue(i));
+			}
+			out.writeInt(trail.getNumBreadcrumbs());
+			for(int i = 0; i < trail.getNumBreadcrumbs(); i++)
+			{
+				out.writeInt(trail.getBreadcrumb(i));
+			}
+			
+			int[] bucketOrder = sizeBuckets != null ? sizeBuckets.getOrder() : new int[0];
+			out.writeInt(bucketOrder.length);
+			for(int i : bucketOrder)
+			{
+				out.writeInt(i);
+			}
+			
+			out.writeBoolean(descend);
+			out.writeInt(stackSize);
+			for(int level = 0; level < stackSize; level++)
+			{
+				List<Integer> values = stackValues.get(level);
+				out.writeInt(stackVariables[level].getIndex());
+				out.writeInt(values.size());
+				for(Integer value : values)
+				{
+					out.writeInt(value);
+				}
+				out.writeInt(stackNextValue[level]);
+			}
+			
+			out.writeBoolean(backjumper != null);
+			if(backjumper != null)
+			{
+				backjumper.writeState(out, stackSize);
+			}
+		}finally
+		{
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Restores a search saved by writeCheckpoint, to be continued by the next 
+	 * call to solve(), resume() or step(n). The heuristics are taken from the 
+	 * checkpoint. Domains are rebuilt by replaying the removals of the trail. 
+	 * The search then goes on exactly as the saved one would have. 
+	 * Nothing changes if the checkpoint cannot be read. 
+	 * @param file checkpoint of a search on the same puzzle as this solver
+	 * @throws IOException if the file cannot be read, or was saved for another puzzle
+	 * @throws IllegalStateException if this solver has already started searching
+	 */
+	public void resumeFrom(File file) throws IOException
+	{
+		if(state != SearchState.NotStarted)
+		{
+			throw new IllegalStateException("a checkpoint can only be loaded before searching");
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+		VariableSelectionHeuristic savedVarHeuristics;
+		ValueSelectionHeuristic savedValHeuristics;
+		ConsistencyCheck savedChecks;
+		boolean savedPreprocessing, savedBackjumping;
+		int savedNogoodLimit;
+		RestartSchedule savedSchedule;
+		long savedRestartBase, savedSeed, savedRestarts, savedRunAssignments, savedRunBudget;
+		long savedAssignments, savedBacktracks, savedSearchNanos;
+		SearchRandom savedRandom = null;
+		Backjumper savedBackjumper = null;
+		int[] weights, trailVariables, trailValues, breadcrumbs, bucketOrder;
+		boolean savedDescend;
+		int[] frameVariables, frameNextValue;
+		List<List<Integer>> frameValues;
+		try
+		{
+			if(in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION)
+			{
+				throw new IOException("not a checkpoint");
+			}
+			int N = in.readInt();
+			boolean samePuzzle = N == sudokuGrid.getN() & in.readInt() == sudokuGrid.getP() & in.readInt() == sudokuGrid.getQ();
+			int[][] board = sudokuGrid.getBoard();
+			for(int row = 0; row < N; row++)
+			{
+				for(int col = 0; col < N; col++)
+				{
+					int value = in.readInt();
+					samePuzzle &= row < board.length && col < board[row].length && board[row][col] == value;
+				}
+			}
+			if(!samePuzzle)
+			{
+				throw new IOException("checkpoint was saved for another puzzle");
+			}
+			
+			savedVarHeuristics = VariableSelectionHeuristic.values()[in.readByte()];
+			savedValHeuristics = ValueSelectionHeuristic.values()[in.readByte()];
+			savedChecks = ConsistencyCheck.values()[in.readByte()];
+			savedPreprocessing = in.readBoolean();
+			savedBackjumping = in.readBoolean();
+			savedNogoodLimit = in.readInt();
+			savedSchedule = RestartSchedule.values()[in.readByte()];
+			savedRestartBase = in.readLong();
+			savedSeed = in.readLong();
+			
+			savedAssignments = in.readLong();
+			savedBacktracks = in.readLong();
+			savedSearchNanos = in.readLong();
+			savedRestarts = in.readLong();
+			savedRunAssignments = in.readLong();
+			savedRunBudget = in.readLong();
+			if(in.readBoolean())
+			{
+				savedRandom = new SearchRandom(0);
+				savedRandom.setState(in.readLong());
+			}
+			
+			weights = readInts(in, network.getConstraints().size());
+			
+			int numVariables = network.getVariables().size();
+			int trailSize = in.readInt();
+			trailVariables = new int[trailSize];
+			trailValues = new int[trailSize];
+			for(int i = 0; i < trailSize; i++)
+			{
+				trailVariables[i] = checkIndex(in.readInt(), numVariables);
+				trailValues[i] = in.readInt();
+			}
+			breadcrumbs = readInts(in, -1);
+			bucketOrder = readInts(in, -1);
+			for(int i : bucketOrder)
+			{
+				checkIndex(i, numVariables);
+			}
+			
+			savedDescend = in.readBoolean();
+			int savedStackSize = in.readInt();
+			if(savedStackSize < 0 || savedStackSize > numVariables)
+			{
+				throw new IOException("corrupt checkpoint");
+			}
+			frameVariables = new int[savedStackSize];
+			frameNextValue = new int[savedStackSize];
+			frameValues = new ArrayList<List<Integer>>(savedStackSize);
+			for(int level = 0; level < savedStackSize; level++)
+			{
+				frameVariables[level] = checkIndex(in.readInt(), numVariables);
+				List<Integer> values = new ArrayList<Integer>();
+				for(int value : readInts(in, -1))
+				{
+					values.add(value);
+				}
+				frameValues.add(values);
+				frameNextValue[level] = in.readInt();
+			}
+			
+			if(in.readBoolean())
+			{
+				savedBackjumper = new Backjumper(network, savedNogoodLimit);
+				savedBackjumper.readState(in);
+			}
+		}catch(IndexOutOfBoundsException e)
+		{
+			throw new IOException("corrupt checkpoint");
+		}finally
+		{
+			in.close();
+		}
+		
+		varHeuristics = savedVarHeuristics;
+		valHeuristics = savedValHeuristics;
+		cChecks = savedChecks;
+		arcConsistencyPreprocessing = savedPreprocessing;
+		backjumping = savedBackjumping;
+		nogoodLimit = savedNogoodLimit;
+		restartSchedule = savedSchedule;
+		restartBase = savedRestartBase;
+		randomSeed = savedSeed;
+		numRestarts = savedRestarts;
+		runAssignments = savedRunAssignments;
+		runBudget = savedRunBudget;
+		//the current run goes on drawing where the saved one stopped
+		random = savedRandom;
+		numAssignments = savedAssignments;
+		numBacktracks = savedBacktracks;
+		List<Constraint> constraints = network.getConstraints();
+		for(int i = 0; i < weights.length; i++)
+		{
+			constraints.get(i).setWeight(weights[i]);
+		}
+		
+		//replay the removals, placing each breadcrumb where it was, with the 
+		//propagators listening so that their counts follow the domains
+		attachPropagators();
+		int crumb = 0;
+		for(int i = 0; i < trailVariables.length; i++)
+		{
+			for(; crumb < breadcrumbs.length && breadcrumbs[crumb] == i; crumb++)
+			{
+				trail.placeBreadCrumb();
+			}
+			network.getVariable(trailVariables[i]).removeValueFromDomain(trailValues[i]);
+		}
+		for(; crumb < breadcrumbs.length; crumb++)
+		{
+			trail.placeBreadCrumb();
+		}
+		//the saved search had already propagated these removals
+		if(unitPropagator != null)
+		{
+			unitPropagator.clear();
+		}
+		if(allDifferentPropagator != null)
+		{
+			allDifferentPropagator.clear();
+		}
+		if(backjumper != null && savedBackjumper != null)
+		{
+			//the replay recorded no causes, the saved ones take over
+			trail.removeListener(backjumper);
+			backjumper = savedBackjumper;
+			trail.addListener(backjumper);
+		}
+		if(sizeBuckets != null && bucketOrder.length == network.getVariables().size())
+		{
+			sizeBuckets.setOrder(bucketOrder);
+		}
+		
+		stackVariables = new Variable[network.getVariables().size() + 1];
+		stackValues = new ArrayList<List<Integer>>(Collections.<List<Integer>>nCopies(stackVariables.length, null));
+		stackNextValue = new int[stackVariables.length];
+		stackSize = frameVariables.length;
+		for(int level = 0; level < stackSize; level++)
+		{
+			stackVariables[level] = network.getVariable(frameVariables[level]);
+			stackValues.set(level, frameValues.get(level));
+			stackNextValue[level] = frameNextValue[level];
+		}
+		lastAssigned = stackSize > 0 ? stackVariables[stackSize - 1] : null;
+		descend = savedDescend;
+		state = SearchState.Running;
+		
+		preprocessingStartTime = System.currentTimeMillis();
+		preprocessingEndTime = preprocessingStartTime;
+		startTime = preprocessingStartTime;
+		searchNanos = savedSearchNanos;
+	}
+	
+	/**
+	 * Reads <tt>length</tt> ints, or if <tt>length</tt> is negative, a count followed by that many ints.
+	 */
+	private static int[] readInts(DataInputStream in, int length) throws IOException
+	{
+		int count = in.readInt();
+		if(length >= 0 && count != length)
+		{
+			throw new IOException("checkpoint was saved for another network");
+		}
+		if(count < 0)
+		{
+			throw new IOException("corrupt checkpoint");
+		}
+		int[] values = new int[count];
+		for(int i = 0; i < count; i++)
+		{
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+	
+	private static int checkIndex(int index, int size) throws IOException
+	{
+		if(index < 0 || index >= size)
+		{
+			throw new IOException("corrupt checkpoint");
+		}
+		return index;
+	}
+	
+	//===============================================================================
+	// Solver
+	//===============================================================================
 
-		{//Check if assignment is completed
-			if(hasSolution)
+	/**
+	 * Method to start the solver
+	 */
+	public void solve()
+	{
+		if(parallelism > 1)
+		{
+			solveInParallel();
+			return;
+		}
+		search(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Runs at most <tt>n</tt> steps of the search, starting it if needed. A 
+	 * step is one value tried or one variable given up on. Lets a scheduler 
+	 * time-slice several solvers on a few threads. Clears a pending pause().
+	 * @return true once the search is over, i.e. a solution was found, the 
+	 * search space is exhausted or the search was stopped
+	 */
+	public boolean step(long n)
+	{
+		paused = false;
+		search(n);
+		return state == SearchState.Finished;
+	}
+	
+	/**
+	 * Makes a running solve() or resume() return after its current step, 
+	 * keeping the state of the search. Can be called from any thread.
+	 */
+	public void pause()
+	{
+		paused = true;
+	}
+	
+	/**
+	 * Continues a paused search on the calling thread, until it is over or 
+	 * paused again.
+	 */
+	public void resume()
+	{
+		paused = false;
+		search(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * @return true once the search is over
+	 */
+	public boolean isFinished()
+	{
+		return state == SearchState.Finished;
+	}
+	
+	/**
+	 * Runs the search loop for at most <tt>maxSteps</tt> steps, or until the 
+	 * search is over or paused. An interrupt or the stop flag ends the search.
+	 */
+	private void search(long maxSteps)
+	{
+		if(state == SearchState.NotStarted)
+		{
+			begin();
+		}
+		long sliceStart = System.nanoTime();
+		long outputBefore = outputNanos;
+		try {
+			for(long steps = 0; state == SearchState.Running && steps < maxSteps && !paused; steps++)
 			{
-				return;
+				if(isStopped())
+				{
+					finish();
+					break;
+				}
+				searchStep();
+			}
+		}catch (VariableSelectionException e)
+		{
+			System.out.println("error with variable selection heuristic.");
+			finish();
+		}
+		searchNanos += System.nanoTime() - sliceStart - (outputNanos - outputBefore);
+		endTime = System.currentTimeMillis();
+		if(state == SearchState.Finished && monitor != null)
+		{
+			monitor.phaseTimed(SearchMonitor.Phase.Conversion, conversionNanos);
+			monitor.phaseTimed(SearchMonitor.Phase.Preprocessing, preprocessingNanos);
+			monitor.phaseTimed(SearchMonitor.Phase.Search, searchNanos);
+			monitor.phaseTimed(SearchMonitor.Phase.Output, outputNanos);
+		}
+	}
+	
+	/**
+	 * Attaches the propagators, runs preprocessing and makes the initial 
+	 * assignments consistent before any decision is made. 
+	 */
+	private void begin()
+	{
+		if(restartSchedule != RestartSchedule.None)
+		{
+			random = new SearchRandom(randomSeed);
+			numRestarts = 0;
+			runAssignments = 0;
+			runBudget = restartBase;
+		}
+		attachPropagators();
+		stackVariables = new Variable[network.getVariables().size() + 1];
+		stackValues = new ArrayList<List<Integer>>(Collections.<List<Integer>>nCopies(stackVariables.length, null));
+		stackNextValue = new int[stackVariables.length];
+		stackSize = 0;
+		state = SearchState.Running;
+		
+		preprocessingStartTime = System.currentTimeMillis();
+		long preprocessingStart = System.nanoTime();
+		lastAssigned = null;
+		boolean isConsistent = !arcConsistencyPreprocessing || arcConsistency();
+		preprocessingNanos = System.nanoTime() - preprocessingStart;
+		preprocessingEndTime = System.currentTimeMillis();
+		
+		startTime = System.currentTimeMillis();
+		long searchStart = System.nanoTime();
+		descend = isConsistent && checkConsistency();
+		searchNanos = System.nanoTime() - searchStart;
+		if(!descend)
+		{
+			finish();
+		}
+	}
+	
+	/**
+	 * Ends the search, whether or not it found a solution. 
+	 */
+	private void finish()
+	{
+		state = SearchState.Finished;
+		trail.clear();
+		detachPropagators();
+		for(int i = 0; i < stackSize; i++)
+		{
+			stackVariables[i] = null;
+			stackValues.set(i, null);
+		}
+		stackSize = 0;
+	}
+	
+	/**
+	 * Ends the current run: takes back every decision, keeping what was 
+	 * deduced from the givens, and gives the next run its budget and seed. 
+	 */
+	private void restart()
+	{
+		while(trail.getNumBreadcrumbs() > 0)
+		{
+			trail.undo();
+		}
+		for(; stackSize > 0; stackSize--)
+		{
+			stackVariables[stackSize - 1] = null;
+			stackValues.set(stackSize - 1, null);
+		}
+		lastAssigned = null;
+		descend = true;
+		
+		numRestarts++;
+		runAssignments = 0;
+		runBudget = restartBase * restartTerm(numRestarts);
+		random.setSeed(randomSeed + numRestarts);
+	}
+	
+	/**
+	 * @param run number of runs before this one
+	 * @return factor of the restart base for this run
+	 */
+	private long restartTerm(long run)
+	{
+		if(restartSchedule == RestartSchedule.Geometric)
+		{
+			return (long) Math.min(Math.pow(GEOMETRIC_FACTOR, run), Long.MAX_VALUE / Math.max(1, restartBase));
+		}
+		return luby(run + 1);
+	}
+	
+	/**
+	 * @param i position in the Luby sequence, from 1
+	 * @return 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ... 
+	 */
+	static long luby(long i)
+	{
+		for(int k = 1; ; k++)
+		{
+			long end = (1L << k) - 1;
+			if(i == end)
+			{
+				return 1L << (k - 1);
+			}
+			if(i < end)
+			{
+				//same as the sequence from its start
+				i -= (1L << (k - 1)) - 1;
+				k = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Splits the top of the search tree into ParallelSearchTasks on a 
+	 * ForkJoinPool and waits for the first solution, or until every task gives
+	 * up, or until this thread is interrupted. 
+	 */
+	private void solveInParallel()
+	{
+		preprocessingStartTime = System.currentTimeMillis();
+		preprocessingEndTime = preprocessingStartTime;
+		startTime = System.currentTimeMillis();
+		long searchStart = System.nanoTime();
+		
+		AtomicBoolean stop = new AtomicBoolean();
+		ParallelSearchTask root = new ParallelSearchTask(this, network, 0, stop);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		ForkJoinTask<BTSolver> result = pool.submit(root);
+		boolean interrupted = false;
+		try
+		{
+			BTSolver winner = result.get();
+			if(winner != null)
+			{
+				hasSolution = true;
+				sudokuGrid = winner.getSolution();
+			}
+		}catch(InterruptedException e)
+		{
+			interrupted = true;
+		}catch(ExecutionException e)
+		{
+			System.out.println("error in parallel search: " + e.getCause());
+		}finally
+		{
+			stop.set(true);
+			pool.shutdownNow();
+		}
+		endTime = System.currentTimeMillis();
+		
+		if(monitor != null)
+		{
+			monitor.phaseTimed(SearchMonitor.Phase.Conversion, conversionNanos);
+			monitor.phaseTimed(SearchMonitor.Phase.Search, System.nanoTime() - searchStart);
+		}
+		
+		//workers add their counts as they stop, wait for them to do so
+		try
+		{
+			pool.awaitTermination(1, TimeUnit.SECONDS);
+		}catch(InterruptedException e)
+		{
+			interrupted = true;
+		}
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		numAssignments = root.getNumAssignments();
+		numBacktracks = root.getNumBacktracks();
+	}
+	
+	/**
+	 * Used by ParallelSearchTask. Brings the network to the state solve() 
+	 * reaches before its first decision and picks the variable to branch on. 
+	 * Changes made to the network are kept. 
+	 * @return the variable to branch on. null if the network is inconsistent, 
+	 * or if it is solved, in which case hasSolution() is true.
+	 */
+	Variable expand() throws VariableSelectionException
+	{
+		attachPropagators();
+		Variable v = null;
+		lastAssigned = null;
+		if((!arcConsistencyPreprocessing || arcConsistency()) && checkConsistency())
+		{
+			v = selectNextVariable();
+			if(v == null)
+			{
+				for(Variable var : network.getVariables())
+				{
+					if(!var.isAssigned())
+					{
+						throw new VariableSelectionException("Something happened with the variable selection heuristic");
+					}
+				}
+				success();
 			}
+		}
+		detachPropagators();
+		return v;
+	}
+	
+	/**
+	 * @param clone network to solve, a clone of this solver's network
+	 * @return a solver for <tt>clone</tt> with the same heuristics as this one, 
+	 * searching sequentially
+	 */
+	BTSolver createWorker(ConstraintNetwork clone)
+	{
+		BTSolver worker = new BTSolver(clone, sudokuGrid);
+		worker.setVariableSelectionHeuristic(varHeuristics);
+		worker.setValueSelectionHeuristic(valHeuristics);
+		worker.setConsistencyChecks(cChecks);
+		worker.setArcConsistencyPreprocessing(arcConsistencyPreprocessing);
+		worker.setBackjumping(backjumping);
+		worker.setNogoodLimit(nogoodLimit);
+		worker.setRestartSchedule(restartSchedule);
+		worker.setRestartBase(restartBase);
+		worker.setRandomSeed(randomSeed);
+		return worker;
+	}
+	
+	int getSplitDepth()
+	{
+		return splitDepth;
+	}
+	
+	private void attachPropagators()
+	{
+		if(varHeuristics != VariableSelectionHeuristic.None && varHeuristics != VariableSelectionHeuristic.DomWdeg)
+		{
+			sizeBuckets = new DomainSizeBuckets(network);
+			sizeBuckets.setRandom(random);
+			trail.addListener(sizeBuckets);
+		}
+		if(cChecks == ConsistencyCheck.UnitPropagation || cChecks == ConsistencyCheck.AllDifferent)
+		{
+			unitPropagator = new UnitPropagator(network);
+			trail.addListener(unitPropagator);
+		}
+		if(cChecks == ConsistencyCheck.AllDifferent)
+		{
+			allDifferentPropagator = new AllDifferentPropagator(network);
+			trail.addListener(allDifferentPropagator);
+		}
+		if(backjumping && cChecks == ConsistencyCheck.ForwardChecking)
+		{
+			backjumper = new Backjumper(network, nogoodLimit);
+			trail.addListener(backjumper);
+		}
+	}
+	
+	private void detachPropagators()
+	{
+		if(sizeBuckets != null)
+		{
+			trail.removeListener(sizeBuckets);
+			sizeBuckets = null;
+		}
+		if(unitPropagator != null)
+		{
+			trail.removeListener(unitPropagator);
+			unitPropagator = null;
+		}
+		if(allDifferentPropagator != null)
+		{
+			trail.removeListener(allDifferentPropagator);
+			allDifferentPropagator = null;
+		}
+		if(backjumper != null)
+		{
+			trail.removeListener(backjumper);
+			backjumper = null;
+		}
+	}
 
+	/**
+	 * One step of the search. After a consistent assignment, picks the next 
+	 * variable and pushes a frame for it. Then tries the next value of the top 
+	 * frame, or pops the frame if it has none left, which undoes the value its
+	 * parent is trying. 
+	 * @throws VariableSelectionException 
+	 */
+	private void searchStep() throws VariableSelectionException
+	{
+		if(random != null && runAssignments >= runBudget && stackSize > 0)
+		{
+			restart();
+			return;
+		}
+		if(descend)
+		{
+			descend = false;
 			//Select unassigned variable
-			Variable v = selectNextVariable();		
-
+			Variable v = selectNextVariable();
+			
 			//check if the assignment is complete
 			if(v == null)
 			{
@@ -492,40 +1563,86 @@ public class BTSolver implements Runnable{
 					}
 				}
 				success();
+				finish();
 				return;
 			}
-
-			//loop through the values of the variable being checked LCV
-
-			
-			for(Integer i : getNextValues(v))
+			if(backjumper != null)
 			{
-				trail.placeBreadCrumb();
-
-				//check a value
-				v.updateDomain(new Domain(i));
-				numAssignments++;
-				boolean isConsistent = checkConsistency();
-				
-				//move to the next assignment
-				if(isConsistent)
-				{		
-					solve(level + 1);
-				}
-
-				//if this assignment failed at any stage, backtrack
-				if(!hasSolution)
+				backjumper.startLevel(stackSize, v);
+			}
+			stackVariables[stackSize] = v;
+			stackValues.set(stackSize, getNextValues(v));
+			stackNextValue[stackSize] = 0;
+			stackSize++;
+		}
+		
+		int level = stackSize - 1;
+		Variable v = stackVariables[level];
+		List<Integer> values = stackValues.get(level);
+		if(stackNextValue[level] == values.size())
+		{
+			//no value left, the value of the parent frame failed, or with 
+			//backjumping the value of the deepest frame that caused the failures
+			int target = backjumper != null ? backjumper.jumpBack(level, stackVariables) : level - 1;
+			for(; stackSize > target + 1; stackSize--)
+			{
+				if(stackSize - 1 < level)
 				{
 					trail.undo();
-					numBacktracks++;
 				}
-				
-				else
-				{
-					return;
-				}
-			}	
-		}	
+				stackVariables[stackSize - 1] = null;
+				stackValues.set(stackSize - 1, null);
+			}
+			if(stackSize == 0)
+			{
+				finish();
+			}
+			else
+			{
+				trail.undo();
+				numBacktracks++;
+			}
+			return;
+		}
+		
+		trail.placeBreadCrumb();
+		
+		//check a value
+		if(backjumper != null)
+		{
+			backjumper.decide();
+		}
+		v.updateDomain(values.get(stackNextValue[level]++));
+		lastAssigned = v;
+		numAssignments++;
+		runAssignments++;
+		int trailSize = trail.size();
+		boolean isConsistent = checkConsistency();
+		if(monitor != null)
+		{
+			monitor.nodeVisited(level);
+			monitor.valuesPruned(level, trail.size() - trailSize);
+			monitor.trailSize(trail.size());
+			if(!isConsistent)
+			{
+				monitor.failure(level);
+			}
+		}
+		
+		//move to the next assignment, or backtrack
+		if(isConsistent)
+		{
+			descend = true;
+		}
+		else
+		{
+			if(backjumper != null)
+			{
+				backjumper.valueFailed(level);
+			}
+			trail.undo();
+			numBacktracks++;
+		}
 	}
 
 	@Override
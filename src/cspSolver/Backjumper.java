@@ -0,0 +1,488 @@
+package cspSolver;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Conflict-directed backjumping and nogood learning for a search using
+ * forward checking (FC-CBJ).
+ *
+ * Registered as a DomainListener on the network's Trail, it records the
+ * cause of every removal: the decision of its level, the variable whose
+ * single value forward checking removed from its neighbors, or a learned
+ * nogood. Following these causes back through the trail explains a wipeout
+ * by the decision levels it depends on. Each level keeps a conflict set, the
+ * levels explaining the values its variable lost or failed with. Once every
+ * value of a level has failed, the search jumps back to the deepest level of
+ * its conflict set instead of the previous one.
+ *
+ * Decision levels are told apart by the Trail's breadcrumbs, so the search
+ * must place exactly one breadcrumb per decision. Removals made before the
+ * first breadcrumb only depend on the givens.
+ *
+ * A nogood is the assignments of the levels of a conflict set, which can
+ * never hold together. Nogoods are kept in a ring buffer of bounded size,
+ * the oldest being replaced, and are checked at the end of each forward
+ * checking pass.
+ *
+ * The causes, conflict sets and nogoods can be saved with a checkpoint of
+ * the search and read back, so a resumed search jumps and learns as the
+ * saved one would have.
+ */
+public class Backjumper implements DomainListener {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final int DECISION = -1;
+	private static final int NOGOOD = -2;
+	private static final int UNKNOWN = -3;		//removal made before recording
+	private static final int MAX_NOGOOD_SIZE = 16;	//longer nogoods hardly ever apply again
+
+	private ConstraintNetwork network;
+	private Trail trail;
+	private int cause = UNKNOWN;				//cause of the removals being made
+	private int[] causeNogood;					//variables of the nogood making the removals, if cause is NOGOOD
+	private int[] causes;						//by trail position
+	private int[][] nogoodCauses;				//by trail position, variables of the nogood that made each removal
+
+	private int words;
+	private long[][] conflictSets;				//by decision level, bit set of levels
+	private long[] conflict;					//explanation of the latest wipeout
+	private int[] mark;							//by variable index, equal to stamp while its value needs explaining
+	private int stamp;
+
+	private int[][] nogoodVariables;
+	private int[][] nogoodValues;
+	private int numNogoods;
+	private int nextNogood;						//slot the next nogood replaces once the store is full
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param network network searched, with its lookup tables built
+	 * @param nogoodCapacity largest number of nogoods kept, 0 to learn none
+	 */
+	public Backjumper(ConstraintNetwork network, int nogoodCapacity)
+	{
+		this.network = network;
+		this.trail = network.getTrail();
+		int numVariables = network.getVariables().size();
+		causes = new int[Math.max(16, trail.size())];
+		nogoodCauses = new int[causes.length][];
+		words = numVariables / 64 + 1;
+		conflictSets = new long[numVariables + 1][];
+		conflict = new long[words];
+		mark = new int[numVariables];
+		nogoodVariables = new int[nogoodCapacity][];
+		nogoodValues = new int[nogoodCapacity][];
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * The removals that follow assign the variable of the latest decision.
+	 */
+	public void decide()
+	{
+		cause = DECISION;
+	}
+
+	/**
+	 * The removals that follow are caused by the single value of v.
+	 */
+	public void propagateFrom(Variable v)
+	{
+		cause = v.getIndex();
+	}
+
+	/**
+	 * Starts the conflict set of a new decision level with the levels that
+	 * explain the values v has already lost.
+	 * @param level level of the decision about to be made on v
+	 */
+	public void startLevel(int level, Variable v)
+	{
+		long[] set = levelSet(level);
+		Arrays.fill(set, 0);
+		stamp++;
+		mark[v.getIndex()] = stamp;
+		explain(set);
+	}
+
+	/**
+	 * Explains the wipeout found by forward checking: a and b are left with
+	 * the same single value.
+	 */
+	public void explainConflict(Variable a, Variable b)
+	{
+		Arrays.fill(conflict, 0);
+		stamp++;
+		mark[a.getIndex()] = stamp;
+		mark[b.getIndex()] = stamp;
+		explain(conflict);
+	}
+
+	/**
+	 * Adds the explanation of the latest wipeout to the conflict set of the
+	 * level whose value caused it.
+	 */
+	public void valueFailed(int level)
+	{
+		long[] set = levelSet(level);
+		for(int i = 0; i < words; i++)
+		{
+			set[i] |= conflict[i];
+		}
+		set[level >> 6] &= ~(1L << level);
+	}
+
+	/**
+	 * Called once every value of a level has failed. Finds the level to jump
+	 * back to, passes the conflict set on to it and learns the nogood made of
+	 * the assignments of the set.
+	 * @param level the level whose values are exhausted
+	 * @param decisions variable of each decision level, all still assigned below <tt>level</tt>
+	 * @return the deepest level of the conflict set, -1 if it is empty, i.e.
+	 * the puzzle has no solution
+	 */
+	public int jumpBack(int level, Variable[] decisions)
+	{
+		long[] set = levelSet(level);
+		int target = -1;
+		int size = 0;
+		for(int i = 0; i < words; i++)
+		{
+			if(set[i] != 0)
+			{
+				target = i * 64 + 63 - Long.numberOfLeadingZeros(set[i]);
+				size += Long.bitCount(set[i]);
+			}
+		}
+		if(target < 0)
+		{
+			return -1;
+		}
+
+		if(nogoodVariables.length > 0 && size <= MAX_NOGOOD_SIZE)
+		{
+			int[] variables = new int[size];
+			int[] values = new int[size];
+			int k = 0;
+			for(int l = 0; l <= target; l++)
+			{
+				if((set[l >> 6] & (1L << l)) != 0)
+				{
+					variables[k] = decisions[l].getIndex();
+					values[k] = decisions[l].getDomain().lowestValue();
+					k++;
+				}
+			}
+			learn(variables, values);
+		}
+
+		long[] targetSet = levelSet(target);
+		for(int i = 0; i < words; i++)
+		{
+			targetSet[i] |= set[i];
+		}
+		targetSet[target >> 6] &= ~(1L << target);
+		return target;
+	}
+
+	/**
+	 * Applies the learned nogoods: a nogood with a single assignment left
+	 * open removes its value, a nogood that fully holds is a wipeout.
+	 * @param queue forward checking queue, receives the variables left with a single value
+	 * @param tail number of variables in the queue
+	 * @return the new number of variables in the queue, -1 on a wipeout
+	 */
+	public int propagateNogoods(Variable[] queue, int tail)
+	{
+		for(int k = 0; k < numNogoods; k++)
+		{
+			int[] variables = nogoodVariables[k];
+			int[] values = nogoodValues[k];
+			int open = -1;
+			boolean applies = true;
+			for(int i = 0; i < variables.length && applies; i++)
+			{
+				Variable v = network.getVariable(variables[i]);
+				if(!v.getDomain().contains(values[i]))
+				{
+					applies = false;
+				}
+				else if(v.size() != 1)
+				{
+					applies = open < 0;
+					open = i;
+				}
+			}
+			if(!applies)
+			{
+				continue;
+			}
+			if(open < 0)
+			{
+				Arrays.fill(conflict, 0);
+				stamp++;
+				for(int index : variables)
+				{
+					mark[index] = stamp;
+				}
+				explain(conflict);
+				return -1;
+			}
+			Variable v = network.getVariable(variables[open]);
+			cause = NOGOOD;
+			causeNogood = variables;
+			v.removeValueFromDomain(values[open]);
+			cause = UNKNOWN;
+			causeNogood = null;
+			if(v.size() == 1)
+			{
+				queue[tail++] = v;
+			}
+		}
+		return tail;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public int getNumNogoods()
+	{
+		return numNogoods;
+	}
+
+	//===============================================================================
+	// Checkpoints
+	//===============================================================================
+
+	/**
+	 * Saves the cause of every removal on the trail, the conflict sets of
+	 * the decision levels in use and the learned nogoods.
+	 * @param numLevels number of decision levels on the search stack
+	 */
+	void writeState(DataOutputStream out, int numLevels) throws IOException
+	{
+		out.writeInt(trail.size());
+		for(int position = 0; position < trail.size(); position++)
+		{
+			out.writeInt(causes[position]);
+			if(causes[position] == NOGOOD)
+			{
+				writeInts(out, nogoodCauses[position]);
+			}
+		}
+		out.writeInt(numLevels);
+		for(int level = 0; level < numLevels; level++)
+		{
+			for(long word : levelSet(level))
+			{
+				out.writeLong(word);
+			}
+		}
+		out.writeInt(numNogoods);
+		out.writeInt(nextNogood);
+		for(int k = 0; k < numNogoods; k++)
+		{
+			writeInts(out, nogoodVariables[k]);
+			writeInts(out, nogoodValues[k]);
+		}
+	}
+
+	/**
+	 * Reads back what writeState saved. Must be called on a backjumper of the
+	 * same network and nogood capacity, before it records any removal.
+	 * @throws IOException if the saved state does not fit this backjumper
+	 */
+	void readState(DataInputStream in) throws IOException
+	{
+		int numVariables = network.getVariables().size();
+		int trailSize = in.readInt();
+		if(trailSize < 0)
+		{
+			throw new IOException("corrupt checkpoint");
+		}
+		causes = new int[Math.max(16, trailSize)];
+		nogoodCauses = new int[causes.length][];
+		for(int position = 0; position < trailSize; position++)
+		{
+			int c = in.readInt();
+			if(c >= numVariables || c < UNKNOWN)
+			{
+				throw new IOException("corrupt checkpoint");
+			}
+			causes[position] = c;
+			if(c == NOGOOD)
+			{
+				nogoodCauses[position] = readInts(in, numVariables);
+			}
+		}
+		int numLevels = in.readInt();
+		if(numLevels < 0 || numLevels > conflictSets.length)
+		{
+			throw new IOException("corrupt checkpoint");
+		}
+		for(int level = 0; level < numLevels; level++)
+		{
+			long[] set = levelSet(level);
+			for(int i = 0; i < words; i++)
+			{
+				set[i] = in.readLong();
+			}
+		}
+		numNogoods = in.readInt();
+		nextNogood = in.readInt();
+		if(numNogoods < 0 || numNogoods > nogoodVariables.length || nextNogood < 0 || nextNogood >= Math.max(1, nogoodVariables.length))
+		{
+			throw new IOException("corrupt checkpoint");
+		}
+		for(int k = 0; k < numNogoods; k++)
+		{
+			nogoodVariables[k] = readInts(in, numVariables);
+			nogoodValues[k] = readInts(in, Integer.MAX_VALUE);
+			if(nogoodValues[k].length != nogoodVariables[k].length)
+			{
+				throw new IOException("corrupt checkpoint");
+			}
+		}
+	}
+
+	//===============================================================================
+	// DomainListener
+	//===============================================================================
+
+	@Override
+	public void valueRemoved(Variable v, int value) {
+		int position = trail.size() - 1;
+		if(position >= causes.length)
+		{
+			causes = Arrays.copyOf(causes, Math.max(position + 1, causes.length * 2));
+			nogoodCauses = Arrays.copyOf(nogoodCauses, causes.length);
+		}
+		causes[position] = cause;
+		nogoodCauses[position] = causeNogood;
+	}
+
+	@Override
+	public void valueRestored(Variable v, int value) {
+		//positions above the trail are overwritten by the next removals
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	/**
+	 * Walks the trail down from its top, following the causes of the removals
+	 * from the variables marked with the current stamp, and adds the level of
+	 * every decision reached to <tt>into</tt>.
+	 */
+	private void explain(long[] into)
+	{
+		int level = trail.getNumBreadcrumbs() - 1;
+		if(level < 0)
+		{
+			return;
+		}
+		int bottom = trail.getBreadcrumb(0);
+		for(int position = trail.size() - 1; position >= bottom; position--)
+		{
+			while(trail.getBreadcrumb(level) > position)
+			{
+				level--;
+			}
+			int index = trail.getVariableIndex(position);
+			if(mark[index] != stamp)
+			{
+				continue;
+			}
+			int c = causes[position];
+			if(c >= 0)
+			{
+				mark[c] = stamp;
+			}
+			else if(c == DECISION)
+			{
+				//the decision alone explains the value, earlier removals don't matter
+				into[level >> 6] |= 1L << level;
+				mark[index] = stamp - 1;
+			}
+			else if(c == NOGOOD)
+			{
+				for(int other : nogoodCauses[position])
+				{
+					if(other != index)
+					{
+						mark[other] = stamp;
+					}
+				}
+			}
+			else
+			{
+				for(int lower = 0; lower <= level; lower++)
+				{
+					into[lower >> 6] |= 1L << lower;
+				}
+			}
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for(int value : values)
+		{
+			out.writeInt(value);
+		}
+	}
+
+	/**
+	 * @param bound every value read must be below it
+	 */
+	private static int[] readInts(DataInputStream in, int bound) throws IOException
+	{
+		int count = in.readInt();
+		if(count < 0 || count > MAX_NOGOOD_SIZE)
+		{
+			throw new IOException("corrupt checkpoint");
+		}
+		int[] values = new int[count];
+		for(int i = 0; i < count; i++)
+		{
+			values[i] = in.readInt();
+			if(values[i] < 0 || values[i] >= bound)
+			{
+				throw new IOException("corrupt checkpoint");
+			}
+		}
+		return values;
+	}
+
+	private long[] levelSet(int level)
+	{
+		if(conflictSets[level] == null)
+		{
+			conflictSets[level] = new long[words];
+		}
+		return conflictSets[level];
+	}
+
+	private void learn(int[] variables, int[] values)
+	{
+		nogoodVariables[nextNogood] = variables;
+		nogoodValues[nextNogood] = values;
+		nextNogood = (nextNogood + 1) % nogoodVariables.length;
+		numNogoods = Math.min(numNogoods + 1, nogoodVariables.length);
+	}
+}
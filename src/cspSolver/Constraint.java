@@ -1,6 +1,7 @@
 package cspSolver;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -14,6 +15,15 @@ public class Constraint{
 	//===============================================================================
 
 	public List<Variable> vars;
+	
+	private int index = -1;
+	private int weight = 1;		//conflict weight used by the dom/wdeg heuristic
+	
+	// Variable.getIndex() of each member, used by contains(). Only trusted
+	// while every member had an index when it was added; otherwise it is
+	// rebuilt by indexMembers().
+	private BitSet members = new BitSet();
+	private boolean membersIndexed = true;
 
 	//===============================================================================
 	// Constructors
@@ -27,6 +37,22 @@ public class Constraint{
 	public Constraint(List<Variable> vars)
 	{
 		this.vars = vars;
+		indexMembers();
+	}
+	
+	/**
+	 * Used to clone a ConstraintNetwork. The copy keeps the weight of 
+	 * <tt>other</tt> and shares its membership bitset, which still holds for
+	 * <tt>vars</tt> as long as they have the indices of the variables they copy.
+	 * @param other constraint to copy
+	 * @param vars copies of the variables of <tt>other</tt>, in the same order
+	 */
+	Constraint(Constraint other, List<Variable> vars)
+	{
+		this.vars = vars;
+		this.weight = other.weight;
+		this.members = other.members;
+		this.membersIndexed = other.membersIndexed;
 	}
 	
 	//===============================================================================
@@ -36,6 +62,55 @@ public class Constraint{
 	public void addVariable(Variable v)
 	{
 		vars.add(v);
+		if(v.getIndex() < 0)
+		{
+			membersIndexed = false;
+		}
+		else
+		{
+			members.set(v.getIndex());
+		}
+	}
+	
+	void setIndex(int index)
+	{
+		this.index = index;
+	}
+	
+	/**
+	 * Used by the dom/wdeg heuristic. Called whenever propagating this 
+	 * constraint wipes out a domain. 
+	 */
+	public void incrementWeight()
+	{
+		weight++;
+	}
+	
+	/**
+	 * Used to restore the learned weight from a checkpoint of the search.
+	 */
+	void setWeight(int weight)
+	{
+		this.weight = weight;
+	}
+	
+	/**
+	 * Rebuilds the membership bitset from <tt>vars</tt>. Called by the 
+	 * ConstraintNetwork once all variables have their indices. 
+	 */
+	void indexMembers()
+	{
+		members = new BitSet();
+		membersIndexed = true;
+		for(Variable v : vars)
+		{
+			if(v.getIndex() < 0)
+			{
+				membersIndexed = false;
+				return;
+			}
+			members.set(v.getIndex());
+		}
 	}
 		
 	//===============================================================================
@@ -48,12 +123,33 @@ public class Constraint{
 	}
 	
 	/**
-	 * 
+	 * @return position of this constraint in its ConstraintNetwork, -1 if it has not been added to one.
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+	
+	/**
+	 * @return 1 plus the number of times this constraint caused a failure
+	 */
+	public int getWeight()
+	{
+		return weight;
+	}
+	
+	/**
+	 * Answered from the membership bitset, so v is expected to belong to
+	 * the same network as this constraint. 
 	 * @param v a Variable
 	 * @return true if v is in the constraint, false otherwise
 	 */
 	public boolean contains(Variable v)
 	{
+		if(membersIndexed && v.getIndex() >= 0)
+		{
+			return members.get(v.getIndex());
+		}
 		return vars.contains(v) ? true: false;
 	}
 	
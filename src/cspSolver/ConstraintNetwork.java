@@ -1,7 +1,9 @@
 package cspSolver;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -18,6 +20,14 @@ public class ConstraintNetwork {
 	
 	private List<Constraint> constraints;
 	private List<Variable> variables;
+	private Trail trail;
+	
+	// Lookup tables built by buildLookupTables(), indexed by Variable.getIndex().
+	// null until built, and cleared again whenever the network changes.
+	private List<List<Variable>> peers;
+	private int[][] peerIndices;
+	private List<List<Constraint>> incidence;
+	private int[][] incidenceIndices;
 	
 	//===============================================================================
 	// Constructor 
@@ -27,6 +37,35 @@ public class ConstraintNetwork {
 	{
 		variables = new ArrayList<Variable>();
 		constraints = new ArrayList<Constraint>();
+		trail = new Trail(this);
+	}
+	
+	/**
+	 * Clones a network in its current state. Every variable is copied with its
+	 * current domain and every constraint with its weight, so the copy can be
+	 * searched without touching the original. The copy gets a fresh Trail. 
+	 * The lookup tables of the original only hold indices, so the copy shares
+	 * them and reads them through views over its own variables and constraints
+	 * instead of building its own. 
+	 * @param other network to copy, with its lookup tables built
+	 */
+	public ConstraintNetwork(ConstraintNetwork other)
+	{
+		this();
+		for(Variable v : other.variables)
+		{
+			add(v.copy());
+		}
+		for(Constraint c : other.constraints)
+		{
+			List<Variable> vars = new ArrayList<Variable>(c.vars.size());
+			for(Variable v : c.vars)
+			{
+				vars.add(variables.get(v.getIndex()));
+			}
+			add(new Constraint(c, vars));
+		}
+		shareLookupTables(other);
 	}
 	
 	//===============================================================================
@@ -35,18 +74,114 @@ public class ConstraintNetwork {
 	
 	public void add(Constraint c)
 	{
-		if (!constraints.contains(c))
+		int i = c.getIndex();
+		if (i < 0 || i >= constraints.size() || constraints.get(i) != c)
 		{
+			c.setIndex(constraints.size());
 			constraints.add(c);
+			clearLookupTables();
 		}
 	}
 	
 	public void add(Variable v)
 	{
-		if(!variables.contains(v))
+		int i = v.getIndex();
+		if(i < 0 || i >= variables.size() || variables.get(i) != v)
 		{
+			v.setIndex(variables.size());
+			v.setTrail(trail);
 			variables.add(v);
+			clearLookupTables();
+		}
+	}
+	
+	/**
+	 * Precomputes the neighbors and the constraints of every variable so 
+	 * that later lookups are O(1) and allocate nothing. Call once after all 
+	 * variables and constraints have been added. Adding to the network 
+	 * afterwards discards the tables until this is called again.
+	 */
+	public void buildLookupTables()
+	{
+		int numVariables = variables.size();
+		List<List<Constraint>> constraintLists = new ArrayList<List<Constraint>>(numVariables);
+		for(int i = 0; i < numVariables; i++)
+		{
+			constraintLists.add(new ArrayList<Constraint>());
+		}
+		for(Constraint c : constraints)
+		{
+			c.indexMembers();
+			for(Variable v : c.vars)
+			{
+				constraintLists.get(v.getIndex()).add(c);
+			}
+		}
+		int[][] constraintIndices = new int[numVariables][];
+		for(int i = 0; i < numVariables; i++)
+		{
+			List<Constraint> list = constraintLists.get(i);
+			constraintIndices[i] = new int[list.size()];
+			for(int j = 0; j < constraintIndices[i].length; j++)
+			{
+				constraintIndices[i][j] = list.get(j).getIndex();
+			}
+			constraintLists.set(i, Collections.unmodifiableList(list));
 		}
+		incidence = constraintLists;
+		incidenceIndices = constraintIndices;
+		
+		List<List<Variable>> peerLists = new ArrayList<List<Variable>>(numVariables);
+		int[][] indices = new int[numVariables][];
+		
+		for(Variable v : variables)
+		{
+			List<Variable> neighbors = computeNeighborsOfVariable(v);
+			int[] neighborIndices = new int[neighbors.size()];
+			for(int i = 0; i < neighborIndices.length; i++)
+			{
+				neighborIndices[i] = neighbors.get(i).getIndex();
+			}
+			peerLists.add(Collections.unmodifiableList(neighbors));
+			indices[v.getIndex()] = neighborIndices;
+		}
+		peers = peerLists;
+		peerIndices = indices;
+	}
+	
+	/**
+	 * Used by the copy constructor. Takes over the index tables of <tt>other</tt>,
+	 * which hold the same positions in both networks, and wraps them in lists
+	 * of this network's variables and constraints. 
+	 * @param other network this one is a copy of
+	 */
+	private void shareLookupTables(ConstraintNetwork other)
+	{
+		if(other.peerIndices == null || other.incidenceIndices == null)
+		{
+			buildLookupTables();
+			return;
+		}
+		int numVariables = variables.size();
+		List<List<Variable>> peerLists = new ArrayList<List<Variable>>(numVariables);
+		List<List<Constraint>> constraintLists = new ArrayList<List<Constraint>>(numVariables);
+		for(int i = 0; i < numVariables; i++)
+		{
+			peerLists.add(new IndexedList<Variable>(variables, other.peerIndices[i]));
+			constraintLists.add(new IndexedList<Constraint>(constraints, other.incidenceIndices[i]));
+		}
+		peers = peerLists;
+		peerIndices = other.peerIndices;
+		incidence = constraintLists;
+		incidenceIndices = other.incidenceIndices;
+	}
+	
+	private void clearLookupTables()
+	{
+		peers = null;
+		peerIndices = null;
+		incidence = null;
+		incidenceIndices = null;
 	}
 	
 	/**
@@ -71,11 +206,58 @@ public class ConstraintNetwork {
 		return variables;
 	}
 	
+	/**
+	 * @return the Trail recording domain changes of this network's variables
+	 */
+	public Trail getTrail()
+	{
+		return trail;
+	}
+	
+	/**
+	 * @param index position of the variable, as returned by Variable.getIndex()
+	 * @return the variable at <tt>index</tt>
+	 */
+	public Variable getVariable(int index)
+	{
+		return variables.get(index);
+	}
+	
+	/**
+	 * Once the lookup tables are built, the returned list is shared and
+	 * unmodifiable. 
+	 * @param v variable to check
+	 * @return all variables that share a constraint with v, excluding v
+	 */
 	public List<Variable> getNeighborsOfVariable(Variable v)
 	{
-		Set<Variable> neighbors = new HashSet<Variable>();
+		if(peers != null)
+		{
+			return peers.get(v.getIndex());
+		}
+		return computeNeighborsOfVariable(v);
+	}
+	
+	/**
+	 * Same as getNeighborsOfVariable, but returns the indices of the neighbors.
+	 * The returned array is shared and must not be modified. 
+	 * @param v variable to check
+	 * @return indices of all variables that share a constraint with v
+	 */
+	public int[] getNeighborIndicesOfVariable(Variable v)
+	{
+		if(peerIndices == null)
+		{
+			buildLookupTables();
+		}
+		return peerIndices[v.getIndex()];
+	}
+	
+	private List<Variable> computeNeighborsOfVariable(Variable v)
+	{
+		Set<Variable> neighbors = new LinkedHashSet<Variable>();
 		
-		for(Constraint c : constraints)
+		for(Constraint c : getConstraintsContainingVariable(v))
 		{
 			if(c.contains(v))
 			{
@@ -103,11 +285,17 @@ public class ConstraintNetwork {
 	}
 	
 	/**
+	 * Once the lookup tables are built, the returned list is shared and
+	 * unmodifiable. 
 	 * @param v variable to check
 	 * @return list of constraints that contains v
 	 */
 	public List<Constraint> getConstraintsContainingVariable(Variable v)
 	{
+		if(incidence != null)
+		{
+			return incidence.get(v.getIndex());
+		}
 		List<Constraint> outList = new ArrayList<Constraint>();
 		for(Constraint c : constraints)
 		{
@@ -135,11 +323,36 @@ public class ConstraintNetwork {
 	{
 		List<Constraint> mConstraints = new ArrayList<Constraint>();
 
-		for (Constraint c : constraints)
+		if (incidence != null)
+		{
+			//only the constraints of modified variables need to be looked at
+			boolean[] isModified = new boolean[constraints.size()];
+			for (Variable v : variables)
+			{
+				if (v.isModified())
+				{
+					for (Constraint c : incidence.get(v.getIndex()))
+					{
+						isModified[c.getIndex()] = true;
+					}
+				}
+			}
+			for (Constraint c : constraints)
+			{
+				if (isModified[c.getIndex()])
+				{
+					mConstraints.add(c);
+				}
+			}
+		}
+		else
 		{
-			if (c.isModified())
+			for (Constraint c : constraints)
 			{
-				mConstraints.add(c);
+				if (c.isModified())
+				{
+					mConstraints.add(c);
+				}
 			}
 		}
 
@@ -175,4 +388,36 @@ public class ConstraintNetwork {
 		}
 		return sb.toString();
 	}
+	
+	//===============================================================================
+	// Shared Lookup Tables
+	//===============================================================================
+	
+	/**
+	 * Unmodifiable view of the elements of <tt>source</tt> at the given indices. 
+	 * Lets copies of a network share the index tables of the original. 
+	 */
+	private static class IndexedList<T> extends AbstractList<T>
+	{
+		private List<T> source;
+		private int[] indices;
+		
+		IndexedList(List<T> source, int[] indices)
+		{
+			this.source = source;
+			this.indices = indices;
+		}
+		
+		@Override
+		public T get(int i)
+		{
+			return source.get(indices[i]);
+		}
+		
+		@Override
+		public int size()
+		{
+			return indices.length;
+		}
+	}
 }
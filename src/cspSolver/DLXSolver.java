@@ -0,0 +1,391 @@
+package cspSolver;
+
+import sudoku.SudokuFile;
+
+/**
+ * Exact cover solver, using Knuth's Algorithm X with dancing links.
+ *
+ * Each candidate (row, column, value) of the puzzle is a row of the exact
+ * cover matrix, covering four constraint columns: its cell, its value in
+ * its row, its value in its column and its value in its block. A solution
+ * picks one candidate per cell so that every column is covered exactly once.
+ *
+ * The sparse matrix is a set of circular doubly linked lists stored in int
+ * arrays, all allocated by the constructor, so the search itself allocates
+ * nothing. Node 0 is the root, nodes 1..4N^2 are the column headers and the
+ * nodes after them belong to the candidates, four each.
+ */
+public class DLXSolver implements Solver{
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final int ROOT = 0;
+
+	private SudokuFile sudokuGrid;
+	private int N, p, q;
+	private boolean hasSolution = false;
+
+	private int[] left;
+	private int[] right;
+	private int[] up;
+	private int[] down;
+	private int[] column;		//header of the column of each node
+	private int[] candidate;	//candidate of each node, (row * N + col) * N + value - 1
+	private int[] size;			//number of nodes in each column, by header
+	private int numNodes;
+
+	private int[] chosen;		//first node of each candidate picked by the search, by depth
+	private int depth;
+
+	private long numAssignments;
+	private long numBacktracks;
+	private long preprocessingStartTime;
+	private long preprocessingEndTime;
+	private long startTime;
+	private long endTime;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * Builds the exact cover matrix of every candidate of the puzzle.
+	 * @param sf puzzle to solve
+	 */
+	public DLXSolver(SudokuFile sf)
+	{
+		this.sudokuGrid = sf;
+		this.N = sf.getN();
+		this.p = sf.getP();
+		this.q = sf.getQ();
+
+		int numColumns = 4 * N * N;
+		int numCandidates = N * N * N;
+		int capacity = numColumns + 1 + 4 * numCandidates;
+		left = new int[capacity];
+		right = new int[capacity];
+		up = new int[capacity];
+		down = new int[capacity];
+		column = new int[capacity];
+		candidate = new int[capacity];
+		size = new int[numColumns + 1];
+		chosen = new int[N * N];
+
+		for(int header = 0; header <= numColumns; header++)
+		{
+			left[header] = header == 0 ? numColumns : header - 1;
+			right[header] = header == numColumns ? 0 : header + 1;
+			up[header] = header;
+			down[header] = header;
+			column[header] = header;
+		}
+		numNodes = numColumns + 1;
+
+		for(int row = 0; row < N; row++)
+		{
+			for(int col = 0; col < N; col++)
+			{
+				for(int value = 1; value <= N; value++)
+				{
+					addCandidate(row, col, value);
+				}
+			}
+		}
+	}
+
+	private void addCandidate(int row, int col, int value)
+	{
+		int block = (row / p * p) + col / q;
+		int first = numNodes;
+		int[] headers = {
+				1 + row * N + col,
+				1 + N * N + row * N + value - 1,
+				1 + 2 * N * N + col * N + value - 1,
+				1 + 3 * N * N + block * N + value - 1 };
+		for(int i = 0; i < headers.length; i++)
+		{
+			int node = numNodes++;
+			int header = headers[i];
+			column[node] = header;
+			candidate[node] = (row * N + col) * N + value - 1;
+
+			up[node] = up[header];
+			down[node] = header;
+			down[up[header]] = node;
+			up[header] = node;
+			size[header]++;
+
+			left[node] = i == 0 ? node : node - 1;
+			right[node] = first;
+			right[left[node]] = node;
+			left[first] = node;
+		}
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @return true if a solution has been found, false otherwise.
+	 */
+	public boolean hasSolution()
+	{
+		return hasSolution;
+	}
+
+	/**
+	 * The solution is laid out like the boards returned by BTSolver, i.e.
+	 * indexed [column][row].
+	 * @return solution if a solution has been found, otherwise returns the unsolved puzzle.
+	 */
+	public SudokuFile getSolution()
+	{
+		return sudokuGrid;
+	}
+
+	public void printSolverStats()
+	{
+		System.out.println("Time taken:" + (endTime-startTime) + " ms");
+		System.out.println("Number of assignments: " + numAssignments);
+		System.out.println("Number of backtracks: " + numBacktracks);
+	}
+
+	public long getTimeTaken()
+	{
+		return endTime-startTime;
+	}
+
+	/**
+	 * Preprocessing places the given values.
+	 */
+	public long getPreprocessingStartTime()
+	{
+		return preprocessingStartTime;
+	}
+
+	public long getPreprocessingEndTime()
+	{
+		return preprocessingEndTime;
+	}
+
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	/**
+	 * @return number of candidates picked by the search, not counting the given values
+	 */
+	public long getNumAssignments()
+	{
+		return numAssignments;
+	}
+
+	/**
+	 * @return number of candidates picked and taken back
+	 */
+	public long getNumBacktracks()
+	{
+		return numBacktracks;
+	}
+
+	//===============================================================================
+	// Dancing Links
+	//===============================================================================
+
+	/**
+	 * Removes a column from the header list, and every candidate covering it
+	 * from the other columns.
+	 */
+	private void cover(int header)
+	{
+		right[left[header]] = right[header];
+		left[right[header]] = left[header];
+		for(int i = down[header]; i != header; i = down[i])
+		{
+			for(int j = right[i]; j != i; j = right[j])
+			{
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				size[column[j]]--;
+			}
+		}
+	}
+
+	/**
+	 * Exact reverse of cover(header).
+	 */
+	private void uncover(int header)
+	{
+		for(int i = up[header]; i != header; i = up[i])
+		{
+			for(int j = left[i]; j != i; j = left[j])
+			{
+				size[column[j]]++;
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+		}
+		right[left[header]] = header;
+		left[right[header]] = header;
+	}
+
+	/**
+	 * @return true if <tt>header</tt> is still in the header list
+	 */
+	private boolean isUncovered(int header)
+	{
+		return right[left[header]] == header;
+	}
+
+	/**
+	 * Covers the columns of the given values.
+	 * @return false if two given values conflict
+	 */
+	private boolean placeGivens()
+	{
+		int[][] board = sudokuGrid.getBoard();
+		for(int row = 0; row < N; row++)
+		{
+			for(int col = 0; col < N; col++)
+			{
+				int value = board[row][col];
+				if(value == 0)
+				{
+					continue;
+				}
+				//nodes of a candidate are consecutive, in the order they were added
+				int first = N * N * 4 + 1 + 4 * ((row * N + col) * N + value - 1);
+				int node = first;
+				do
+				{
+					if(!isUncovered(column[node]))
+					{
+						return false;
+					}
+					cover(column[node]);
+					node = right[node];
+				} while(node != first);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the uncovered column with the fewest candidates, ROOT if none is left
+	 */
+	private int selectColumn()
+	{
+		int best = ROOT;
+		for(int header = right[ROOT]; header != ROOT; header = right[header])
+		{
+			if(best == ROOT || size[header] < size[best])
+			{
+				best = header;
+				if(size[best] <= 1)
+				{
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Algorithm X.
+	 * @param level number of candidates picked so far
+	 * @return true once every column is covered
+	 */
+	private boolean search(int level)
+	{
+		int header = selectColumn();
+		if(header == ROOT)
+		{
+			depth = level;
+			return true;
+		}
+		if(Thread.currentThread().isInterrupted())
+		{
+			return false;
+		}
+
+		cover(header);
+		for(int row = down[header]; row != header; row = down[row])
+		{
+			chosen[level] = row;
+			numAssignments++;
+			for(int j = right[row]; j != row; j = right[j])
+			{
+				cover(column[j]);
+			}
+			if(search(level + 1))
+			{
+				return true;
+			}
+			for(int j = left[row]; j != row; j = left[j])
+			{
+				uncover(column[j]);
+			}
+			numBacktracks++;
+		}
+		uncover(header);
+		return false;
+	}
+
+	private void success()
+	{
+		hasSolution = true;
+		int[][] board = new int[N][N];
+		int[][] givens = sudokuGrid.getBoard();
+		for(int row = 0; row < N; row++)
+		{
+			for(int col = 0; col < N; col++)
+			{
+				board[col][row] = givens[row][col];
+			}
+		}
+		for(int level = 0; level < depth; level++)
+		{
+			int c = candidate[chosen[level]];
+			int value = c % N + 1;
+			int cell = c / N;
+			board[cell % N][cell / N] = value;
+		}
+		sudokuGrid = new SudokuFile(N, p, q, board);
+	}
+
+	//===============================================================================
+	// Solver
+	//===============================================================================
+
+	/**
+	 * Solves the puzzle. The matrix is left as the solution found it, so a
+	 * DLXSolver solves its puzzle once.
+	 */
+	public void solve()
+	{
+		preprocessingStartTime = System.currentTimeMillis();
+		boolean isConsistent = placeGivens();
+		preprocessingEndTime = System.currentTimeMillis();
+
+		startTime = System.currentTimeMillis();
+		if(isConsistent && search(0))
+		{
+			success();
+		}
+		endTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public void run() {
+		solve();
+	}
+}
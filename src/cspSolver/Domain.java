@@ -3,33 +3,43 @@ package cspSolver;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Represents the domain of a variable, i.e. the possible values that each
- * variable may assign. 
+ * variable may assign.
+ *
+ * Values are stored as bits of a primitive mask: value v occupies bit v-1.
+ * Domains whose values all fit in a single long (values 1..64) use the
+ * <tt>bits</tt> word directly; larger domains switch to a multi-word array.
+ * Only positive values can be stored.
  */
 public class Domain implements Iterable<Integer>{
-	
+
 	//===============================================================================
 	// Properties
 	//===============================================================================
-	
-	private ArrayList<Integer> values = new ArrayList<Integer>();
+
+	private static final int WORD_SIZE = 64;
+
+	private long bits;		//values 1..64, used while words == null
+	private long[] words;	//values 1..64*words.length, null for small domains
+	private int size;
 	private boolean modified;
-	
+
 	//===============================================================================
 	// Constructors
 	//===============================================================================
-	
+
 	/**
 	 * Constructs a domain with a single value
 	 * @param value the sole value within the domain
 	 */
 	public Domain(int value)
 	{
-		values.add(value);
+		add(value);
 	}
-	
+
 	/**
 	 * Constructs a domain with an array of values
 	 * @param values all possible values for the domain
@@ -38,51 +48,59 @@ public class Domain implements Iterable<Integer>{
 	{
 		for(int i = 0; i < values.length; i++)
 		{
-			this.values.add(values[i]);
+			add(values[i]);
 		}
 	}
-	
+
 	/**
 	 * Constructs a domain with an ArrayList<Integer> of values
 	 * @param values all possible values for the domain
 	 */
 	public Domain(List<Integer> values)
 	{
-		this.values.clear();
-		this.values.addAll(values);
+		for(Integer value : values)
+		{
+			add(value);
+		}
 	}
-	
+
 	/**
-	 * Copy Constructor. Used to keep a copy of assignments in the Trail.
+	 * Copy Constructor.
 	 * @param d the domain to copy
-	 * @see Trail
 	 */
 	public Domain(Domain d)
 	{
-		for(Integer value : d.getValues())
-		{
-			this.values.add(value);
-		}
+		this.bits = d.bits;
+		this.words = d.words == null ? null : d.words.clone();
+		this.size = d.size;
 	}
-	
+
 	//===============================================================================
 	// Accessors
 	//===============================================================================
-	
+
 	/**
 	 * *Note, Domain is iterable. You can use
 	 * 	for(Integer i : Domain)
 	 *  {
 	 *  	...
 	 *  }
-	 *  
+	 *
+	 * The returned list is a new list of the values in ascending order.
+	 * Changing it does not change the domain.
+	 *
 	 * @return ArrayList of values in Domain
 	 */
 	public ArrayList<Integer> getValues()
 	{
+		ArrayList<Integer> values = new ArrayList<Integer>(size);
+		for(int value = lowestValue(); value != 0; value = nextValue(value))
+		{
+			values.add(value);
+		}
 		return values;
 	}
-	
+
 	/**
 	 * Checks if a value exists within the domain
 	 * @param value to check
@@ -90,39 +108,98 @@ public class Domain implements Iterable<Integer>{
 	 */
 	public boolean contains(int value)
 	{
-		if (values.contains(value))
+		if(value < 1)
+		{
+			return false;
+		}
+		int bit = value - 1;
+		if(words == null)
 		{
-			return true;
+			return bit < WORD_SIZE && (bits & (1L << bit)) != 0;
 		}
-		return false;
+		int word = bit / WORD_SIZE;
+		return word < words.length && (words[word] & (1L << bit)) != 0;
 	}
-	
-	/** 
+
+	/**
 	 * @return number of values in the domain
 	 */
 	public int size()
 	{
-		return values.size();
+		return size;
+	}
+
+	/**
+	 * Same as size(). Provided for callers working directly with the bitmask.
+	 * @return number of values in the domain
+	 */
+	public int popcount()
+	{
+		return size;
 	}
-	
+
 	/**
-	 * @return true if no values are contained in the domain. 
+	 * @return the smallest value in the domain, 0 if the domain is empty.
+	 */
+	public int lowestValue()
+	{
+		return nextValue(0);
+	}
+
+	/**
+	 * Used to walk the domain without allocating an iterator:
+	 * 	for(int v = d.lowestValue(); v != 0; v = d.nextValue(v))
+	 *
+	 * @param value a value, which need not be in the domain
+	 * @return the smallest value in the domain greater than <tt>value</tt>, 0 if there is none.
+	 */
+	public int nextValue(int value)
+	{
+		int bit = value < 0 ? 0 : value;	//bit index of value+1
+		if(words == null)
+		{
+			if(bit >= WORD_SIZE)
+			{
+				return 0;
+			}
+			long rest = bits & (-1L << bit);
+			return rest == 0 ? 0 : Long.numberOfTrailingZeros(rest) + 1;
+		}
+		int word = bit / WORD_SIZE;
+		if(word >= words.length)
+		{
+			return 0;
+		}
+		long rest = words[word] & (-1L << bit);
+		while(rest == 0)
+		{
+			if(++word == words.length)
+			{
+				return 0;
+			}
+			rest = words[word];
+		}
+		return word * WORD_SIZE + Long.numberOfTrailingZeros(rest) + 1;
+	}
+
+	/**
+	 * @return true if no values are contained in the domain.
 	 */
 	public boolean isEmpty()
 	{
-		return values.isEmpty();
+		return size == 0;
 	}
-	
+
 	/**
 	 * Returns whether or not the domain has been modified.
-	 * 
+	 *
 	 * @return true if the domain has been modified
 	 */
 	public boolean isModified()
 	{
 		return modified;
 	}
-	
+
 	//===============================================================================
 	// Modifiers
 	//===============================================================================
@@ -133,21 +210,70 @@ public class Domain implements Iterable<Integer>{
 	 */
 	public boolean remove(int value)
 	{
-		Integer v = value;
-		
 		if(!contains(value))
 		{
 			return false;
 		}
-		
+
 		setModified(true);
-		values.remove(v);
+		int bit = value - 1;
+		if(words == null)
+		{
+			bits &= ~(1L << bit);
+		}
+		else
+		{
+			words[bit / WORD_SIZE] &= ~(1L << bit);
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * Adds <tt>value</tt> to the domain. Does not change the modified flag.
+	 * @param value the int to be added, must be positive
+	 * @return true if the value was not already in the domain
+	 */
+	public boolean add(int value)
+	{
+		if(value < 1)
+		{
+			throw new IllegalArgumentException("Domain values must be positive: " + value);
+		}
+		if(contains(value))
+		{
+			return false;
+		}
+
+		int bit = value - 1;
+		if(words == null && bit < WORD_SIZE)
+		{
+			bits |= 1L << bit;
+		}
+		else
+		{
+			int word = bit / WORD_SIZE;
+			if(words == null)
+			{
+				words = new long[word + 1];
+				words[0] = bits;
+				bits = 0;
+			}
+			else if(word >= words.length)
+			{
+				long[] grown = new long[word + 1];
+				System.arraycopy(words, 0, grown, 0, words.length);
+				words = grown;
+			}
+			words[word] |= 1L << bit;
+		}
+		size++;
 		return true;
 	}
-	
+
 	/**
 	 * Sets modified flag.
-	 * @param modified value to set the modified flag. 
+	 * @param modified value to set the modified flag.
 	 */
 	public void setModified(boolean modified)
 	{
@@ -157,27 +283,56 @@ public class Domain implements Iterable<Integer>{
 	//===============================================================================
 	// Iterator
 	//===============================================================================
-	
+
 	@Override
 	public Iterator<Integer> iterator() {
-		return values.iterator();
+		return new Iterator<Integer>(){
+
+			private int next = lowestValue();
+			private int last = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next != 0;
+			}
+
+			@Override
+			public Integer next() {
+				if(next == 0)
+				{
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = nextValue(next);
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if(last == 0)
+				{
+					throw new IllegalStateException();
+				}
+				Domain.this.remove(last);
+				last = 0;
+			}
+		};
 	}
-	
+
 	//===============================================================================
 	// String representation
 	//===============================================================================
-	
+
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder("{");
 		String delim = "";
-		for (Integer i : values)
+		for(int value = lowestValue(); value != 0; value = nextValue(value))
 		{
-			sb.append(delim).append(i);
+			sb.append(delim).append(value);
 			delim = ",";
 		}
 		sb.append("}");
 		return sb.toString();
 	}
 }
-
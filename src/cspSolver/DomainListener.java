@@ -0,0 +1,20 @@
+package cspSolver;
+
+/**
+ * Receives every domain change recorded on a Trail. Used by structures that
+ * need to stay in sync with the domains during backtracking search.
+ * 
+ * @see Trail#addListener(DomainListener)
+ */
+public interface DomainListener {
+
+	/**
+	 * Called after <tt>value</tt> has been removed from the domain of v.
+	 */
+	public void valueRemoved(Variable v, int value);
+	
+	/**
+	 * Called after <tt>value</tt> has been put back into the domain of v by Trail.undo().
+	 */
+	public void valueRestored(Variable v, int value);
+}
@@ -0,0 +1,292 @@
+package cspSolver;
+
+import java.util.Random;
+
+/**
+ * Variable selection index for the MRV and degree heuristics. Keeps every
+ * variable of a ConstraintNetwork in a bucket for its current domain size,
+ * and counts the unassigned neighbors of every variable.
+ *
+ * Buckets are doubly linked lists over variable indices stored in int
+ * arrays. Registered as a DomainListener on the network's Trail, the index
+ * follows every removal and every undo in O(1), plus O(neighbors) when a
+ * variable becomes assigned or unassigned. Changes that bypass the Trail
+ * (e.g. Variable.setDomain) are not seen.
+ */
+public class DomainSizeBuckets implements DomainListener {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final int NONE = -1;
+
+	private ConstraintNetwork network;
+	private int[] head;				//first variable of each bucket, by domain size
+	private int[] next;				//by variable index
+	private int[] prev;				//by variable index
+	private int[] bucketOf;			//domain size each variable is filed under
+	private int[] unassignedNeighbors;
+	private Random random;			//breaks ties at random when set, otherwise the first of the ties wins
+	private int ties;				//number of ties of the best variable so far, while breaking ties at random
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * Builds the index from the current domains of the network.
+	 * @param network network whose variables are indexed
+	 */
+	public DomainSizeBuckets(ConstraintNetwork network)
+	{
+		this.network = network;
+		int numVariables = network.getVariables().size();
+		int maxSize = 1;
+		for(Variable v : network.getVariables())
+		{
+			maxSize = Math.max(maxSize, v.size());
+		}
+
+		head = new int[maxSize + 1];
+		next = new int[numVariables];
+		prev = new int[numVariables];
+		bucketOf = new int[numVariables];
+		unassignedNeighbors = new int[numVariables];
+
+		for(int size = 0; size <= maxSize; size++)
+		{
+			head[size] = NONE;
+		}
+		for(int i = numVariables - 1; i >= 0; i--)
+		{
+			insert(i, network.getVariable(i).size());
+		}
+		for(Variable v : network.getVariables())
+		{
+			int count = 0;
+			for(int neighbor : network.getNeighborIndicesOfVariable(v))
+			{
+				if(bucketOf[neighbor] != 1)
+				{
+					count++;
+				}
+			}
+			unassignedNeighbors[v.getIndex()] = count;
+		}
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * @param random picks among the variables tied for the heuristics, null 
+	 * to pick the first one in bucket order
+	 */
+	public void setRandom(Random random)
+	{
+		this.random = random;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @return the unassigned variable with the smallest domain, null if all variables are assigned.
+	 * An empty domain counts as the smallest.
+	 */
+	public Variable getMRV()
+	{
+		int size = smallestUnassignedSize();
+		if(size == NONE)
+		{
+			return null;
+		}
+		if(random == null)
+		{
+			return network.getVariable(head[size]);
+		}
+		int chosen = NONE;
+		int count = 0;
+		for(int i = head[size]; i != NONE; i = next[i])
+		{
+			if(random.nextInt(++count) == 0)
+			{
+				chosen = i;
+			}
+		}
+		return network.getVariable(chosen);
+	}
+
+	/**
+	 * @return among the unassigned variables with the smallest domain, the one with
+	 * the most unassigned neighbors. null if all variables are assigned.
+	 */
+	public Variable getMRV_DH()
+	{
+		int size = smallestUnassignedSize();
+		if(size == NONE)
+		{
+			return null;
+		}
+		return network.getVariable(maxDegreeInBucket(size, head[size]));
+	}
+
+	/**
+	 * @return the unassigned variable with the most unassigned neighbors, null if all variables are assigned.
+	 */
+	public Variable getMaxDegree()
+	{
+		int best = NONE;
+		for(int size = 0; size < head.length; size++)
+		{
+			if(size != 1)
+			{
+				best = maxDegreeInBucket(size, best);
+			}
+		}
+		return best == NONE ? null : network.getVariable(best);
+	}
+
+	/**
+	 * @param v a variable of the network
+	 * @return number of neighbors of v that are not assigned
+	 */
+	public int getUnassignedNeighbors(Variable v)
+	{
+		return unassignedNeighbors[v.getIndex()];
+	}
+
+	private int smallestUnassignedSize()
+	{
+		for(int size = 0; size < head.length; size++)
+		{
+			if(size != 1 && head[size] != NONE)
+			{
+				return size;
+			}
+		}
+		return NONE;
+	}
+
+	private int maxDegreeInBucket(int size, int best)
+	{
+		for(int i = head[size]; i != NONE; i = next[i])
+		{
+			if(best == NONE || unassignedNeighbors[i] > unassignedNeighbors[best])
+			{
+				best = i;
+				ties = 1;
+			}
+			else if(random != null && unassignedNeighbors[i] == unassignedNeighbors[best] && random.nextInt(++ties) == 0)
+			{
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Ties are broken by the order of the variables within a bucket, which 
+	 * depends on the removals that were since undone. Used by checkpoints.
+	 * @return every variable index, bucket by bucket, in list order
+	 */
+	int[] getOrder()
+	{
+		int[] order = new int[next.length];
+		int count = 0;
+		for(int size = 0; size < head.length; size++)
+		{
+			for(int i = head[size]; i != NONE; i = next[i])
+			{
+				order[count++] = i;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Reorders each bucket as returned by getOrder(). The buckets must hold 
+	 * the same variables as when the order was taken.
+	 * @param order every variable index, bucket by bucket, in list order
+	 */
+	void setOrder(int[] order)
+	{
+		for(int k = order.length - 1; k >= 0; k--)
+		{
+			unlink(order[k]);
+			insert(order[k], bucketOf[order[k]]);
+		}
+	}
+
+	//===============================================================================
+	// DomainListener
+	//===============================================================================
+
+	@Override
+	public void valueRemoved(Variable v, int value) {
+		move(v, v.size());
+	}
+
+	@Override
+	public void valueRestored(Variable v, int value) {
+		move(v, v.size());
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	private void move(Variable v, int size)
+	{
+		int i = v.getIndex();
+		int oldSize = bucketOf[i];
+		if(oldSize == size)
+		{
+			return;
+		}
+		unlink(i);
+		insert(i, size);
+
+		boolean wasAssigned = oldSize == 1;
+		boolean isAssigned = size == 1;
+		if(wasAssigned != isAssigned)
+		{
+			int delta = isAssigned ? -1 : 1;
+			for(int neighbor : network.getNeighborIndicesOfVariable(v))
+			{
+				unassignedNeighbors[neighbor] += delta;
+			}
+		}
+	}
+
+	private void insert(int i, int size)
+	{
+		bucketOf[i] = size;
+		prev[i] = NONE;
+		next[i] = head[size];
+		if(head[size] != NONE)
+		{
+			prev[head[size]] = i;
+		}
+		head[size] = i;
+	}
+
+	private void unlink(int i)
+	{
+		if(prev[i] != NONE)
+		{
+			next[prev[i]] = next[i];
+		}
+		else
+		{
+			head[bucketOf[i]] = next[i];
+		}
+		if(next[i] != NONE)
+		{
+			prev[next[i]] = prev[i];
+		}
+	}
+}
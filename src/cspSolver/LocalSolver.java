@@ -1,28 +1,89 @@
 package cspSolver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import sudoku.Converter;
 import sudoku.SudokuFile;
 
 /**
- * Basic local search solver
+ * Local search solver. Every variable always holds a value, and each step
+ * changes the value of one variable until no two variables of a constraint
+ * hold the same value.
  *
+ * The state is kept in arrays indexed by variable and constraint index: the
+ * value of each variable, the number of variables of each constraint holding
+ * each value, and the resulting score, the number of ordered pairs of
+ * variables that share a constraint and a value. A move updates them in
+ * O(1) per constraint of the variable, and the puzzle is solved once the
+ * score is 0. The variables of the network are only written when a solution
+ * is found.
+ *
+ * Annealing fills each block with a permutation of its missing values and
+ * only swaps two cells of a block, so blocks never conflict and the score
+ * counts row and column conflicts alone.
+ *
+ * Tabu search makes the best move of any variable in conflict, but forbids a
+ * variable to take back a value it left for a number of steps that grows
+ * with the number of variables in conflict, unless doing so reaches a score
+ * never seen since the last restart.
  */
-public class LocalSolver implements Runnable{
+public class LocalSolver implements Solver{
 
 	//===============================================================================
 	// Properties
 	//===============================================================================
 
+	public enum Strategy { RandomWalk, MinConflicts, Annealing, Tabu };
+
+	private static final double WALK_PROBABILITY = 0.02;	//chance that min-conflicts moves at random, to leave plateaus
+	private static final int GUIDED_RESTART_LIMIT = 100000;	//default restart limit of min-conflicts and tabu, which need far longer runs than a random walk
+	private static final int TEMPERATURE_SAMPLES = 200;		//swaps sampled to pick the initial temperature
+	private static final int TABU_RANDOM_TENURE = 10;		//tabu tenure is up to this many steps at random,
+	private static final double TABU_TENURE_FACTOR = 0.6;	//plus this many per variable in conflict
+
 	private ConstraintNetwork network;
 	private int n;
+	private Strategy strategy = Strategy.MinConflicts;
+	private Random random = new Random();
+
+	private int[] changeable;			//indices of the variables that are not given
+	private int[] values;				//by variable index
+	private int[][] constraintsOf;		//by variable index, indices of its constraints
+	private int[][] occupancy;			//by constraint index and value, number of its variables holding the value
+	private int score = -1;				//ordered pairs of conflicting variables, -1 before the first state
+	private int[] conflicted;			//changeable variables that may be in conflict, checked when picked
+	private boolean[] isListed;
+	private int numConflicted;
+	private Assignment candidate = new Assignment(null, 0);	//overwritten at each step
+	private Assignment best = new Assignment(null, 0);
+
+	private int[][] blockCells;			//by block, indices of its changeable variables
+	private int[] swappableBlocks;		//blocks with at least two changeable variables
+	private double initialTemperature = 0;	//0 to derive it from the start state
+	private double coolingRate = 0.99;
+	private int stepsPerTemperature = 0;	//0 for the number of swaps within blocks
+	private int reheatAfter = 0;			//steps without a new best score before reheating, 0 for 50 temperatures
+	private double startTemperature;
+	private double temperature;
+	private int stepsAtTemperature;
+	private int bestScore;
+	private int stallSteps;
+	private int[] tabuUntil;			//by variable index * (n + 1) + value, step before which the variable may not take the value
 
-	private int numTotalAttempts; 
+	private long numTotalAttempts;
+	private long numRestarts;
 	private int numAttempts = 0; //used for restarts
 	private int limitAttempts = 1000; //used for restarts
+	private boolean isLimitSet;		//false while the strategy picks the limit
 	private long startTime, endTime;
+	private SearchMonitor monitor;		//null unless instrumented
+	private AtomicInteger sharedBestScore;	//null unless one of several walkers, 0 once any of them is solved
+	private long conversionNanos;
+	private long searchStart;
 
 	private SudokuFile sudokuGrid;
 
@@ -32,9 +93,144 @@ public class LocalSolver implements Runnable{
 
 	public LocalSolver (SudokuFile sf)
 	{
+		long conversionStart = System.nanoTime();
 		this.network = Converter.SudokuFileToConstraintNetwork(sf);
+		conversionNanos = System.nanoTime() - conversionStart;
 		n = sf.getN();
 		sudokuGrid = sf;
+
+		int numVariables = network.getVariables().size();
+		values = new int[numVariables];
+		constraintsOf = new int[numVariables][];
+		conflicted = new int[numVariables];
+		isListed = new boolean[numVariables];
+		List<Integer> free = new ArrayList<Integer>();
+		for(Variable v : network.getVariables())
+		{
+			List<Constraint> constraints = network.getConstraintsContainingVariable(v);
+			constraintsOf[v.getIndex()] = new int[constraints.size()];
+			for(int i = 0; i < constraints.size(); i++)
+			{
+				constraintsOf[v.getIndex()][i] = constraints.get(i).getIndex();
+			}
+			if(v.isChangeable())
+			{
+				free.add(v.getIndex());
+			}
+		}
+		changeable = new int[free.size()];
+		for(int i = 0; i < changeable.length; i++)
+		{
+			changeable[i] = free.get(i);
+		}
+		occupancy = new int[network.getConstraints().size()][n + 1];
+		tabuUntil = new int[numVariables * (n + 1)];
+
+		List<List<Integer>> cellsOfBlock = new ArrayList<List<Integer>>();
+		for(int b = 0; b < n; b++)
+		{
+			cellsOfBlock.add(new ArrayList<Integer>());
+		}
+		for(int v : changeable)
+		{
+			cellsOfBlock.get(network.getVariable(v).block()).add(v);
+		}
+		blockCells = new int[n][];
+		List<Integer> swappable = new ArrayList<Integer>();
+		for(int b = 0; b < n; b++)
+		{
+			blockCells[b] = new int[cellsOfBlock.get(b).size()];
+			for(int i = 0; i < blockCells[b].length; i++)
+			{
+				blockCells[b][i] = cellsOfBlock.get(b).get(i);
+			}
+			if(blockCells[b].length > 1)
+			{
+				swappable.add(b);
+			}
+		}
+		swappableBlocks = new int[swappable.size()];
+		for(int i = 0; i < swappableBlocks.length; i++)
+		{
+			swappableBlocks[i] = swappable.get(i);
+		}
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * @param monitor receives the measurements of the next call to solve(),
+	 * null to measure nothing
+	 */
+	public void setSearchMonitor(SearchMonitor monitor)
+	{
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @param strategy how each step picks its move. MinConflicts by default.
+	 */
+	public void setStrategy(Strategy strategy)
+	{
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Makes this solver one of several walkers on the same puzzle: it lowers
+	 * <tt>best</tt> to each better score it reaches, and gives up as soon as
+	 * another walker brings it to 0.
+	 * @param best best score of all walkers, shared by them
+	 */
+	void setSharedBestScore(AtomicInteger best)
+	{
+		this.sharedBestScore = best;
+	}
+
+	/**
+	 * @param seed seed of the random choices of the search, which are not seeded otherwise
+	 */
+	public void setRandomSeed(long seed)
+	{
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Sets the cooling schedule of annealing: the temperature starts at
+	 * <tt>initialTemperature</tt> and is multiplied by <tt>coolingRate</tt>
+	 * every <tt>stepsPerTemperature</tt> steps.
+	 * @param initialTemperature 0 for the standard deviation of the score change of random swaps from the start state
+	 * @param coolingRate between 0 and 1, 0.99 by default
+	 * @param stepsPerTemperature 0 for the number of possible swaps within blocks
+	 */
+	public void setCoolingSchedule(double initialTemperature, double coolingRate, int stepsPerTemperature)
+	{
+		this.initialTemperature = initialTemperature;
+		this.coolingRate = coolingRate;
+		this.stepsPerTemperature = stepsPerTemperature;
+	}
+
+	/**
+	 * @param steps steps without a new best score after which annealing goes
+	 * back to its initial temperature, 0 for fifty temperatures' worth
+	 */
+	public void setReheatAfter(int steps)
+	{
+		this.reheatAfter = steps;
+	}
+
+	/**
+	 * @param steps steps after which the search restarts from a new random state. 
+	 * By default 1000 for RandomWalk and 100000 for MinConflicts and Tabu, which on 
+	 * 16x16 puzzles solved none of ten within 10 s with 1000 and all of them with 
+	 * 100000. Tabu search counts the steps since its last new best score, and 
+	 * annealing reheats instead.
+	 */
+	public void setRestartLimit(int steps)
+	{
+		this.limitAttempts = steps;
+		this.isLimitSet = true;
 	}
 
 	//===============================================================================
@@ -60,56 +256,312 @@ public class LocalSolver implements Runnable{
 		System.out.println("Steps until convergence:" + numTotalAttempts + " steps");
 	}
 
+	/**
+	 * Local search does no preprocessing.
+	 */
+	public long getPreprocessingStartTime()
+	{
+		return startTime;
+	}
+
+	public long getPreprocessingEndTime()
+	{
+		return startTime;
+	}
+
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	/**
+	 * @return number of local search steps taken
+	 */
+	public long getNumAssignments()
+	{
+		return numTotalAttempts;
+	}
+
+	/**
+	 * @return number of restarts, or reheats when annealing
+	 */
+	public long getNumBacktracks()
+	{
+		return numRestarts;
+	}
+
 	//===============================================================================
 	// Helper Methods
 	//===============================================================================
 
+	/**
+	 * @return true once the current state has no conflict
+	 */
 	public boolean isSolution()
 	{
-		for(Constraint c : network.getConstraints())
-		{
-			if(!c.isConsistent())
-			{
-				return false;
-			}
-		}
-		return true;
+		return score == 0;
 	}
 
 	/**
-	 * Restarts the local search after a predefined number of attempts. 
+	 * Restarts the local search after a predefined number of attempts.
 	 */
 	public void restartCounter()
 	{
-		numTotalAttempts++;
-		if (numAttempts++ > limitAttempts)
+		countStep();
+		if (numAttempts++ > getRestartLimit())
 		{
-			System.out.println("restart");
+			countRestart();
 			numAttempts = 0;
 			generateStartState();
 		}
 	}
 
 	/**
-	 * Assigns random values to each non-initial variable in the puzzle
+	 * @return steps after which the search restarts, as set or by default for the strategy
+	 */
+	private int getRestartLimit()
+	{
+		if(isLimitSet || strategy == Strategy.RandomWalk)
+		{
+			return limitAttempts;
+		}
+		return GUIDED_RESTART_LIMIT;
+	}
+
+	/**
+	 * Assigns random values to each non-initial variable in the puzzle, and
+	 * counts the conflicts of the new state from scratch. Annealing gives
+	 * each block a random permutation of its missing values instead.
 	 */
 	public void generateStartState()
 	{
 		for(Variable v : network.getVariables())
 		{
-			if(v.isChangeable())
+			values[v.getIndex()] = v.isChangeable() ? random.nextInt(n) + 1 : v.getAssignment();
+		}
+		if(strategy == Strategy.Annealing)
+		{
+			fillBlocks();
+		}
+		for(int[] counts : occupancy)
+		{
+			Arrays.fill(counts, 0);
+		}
+		score = 0;
+		for(int v = 0; v < values.length; v++)
+		{
+			for(int c : constraintsOf[v])
+			{
+				score += 2 * occupancy[c][values[v]]++;
+			}
+		}
+		numConflicted = 0;
+		for(int v : changeable)
+		{
+			isListed[v] = false;
+			if(conflictsOf(v) > 0)
 			{
-				v.assignValue((int)(Math.random()*n+1));
+				list(v);
 			}
 		}
 	}
 
+	/**
+	 * Random walk step: a random variable takes a random value.
+	 */
 	public void generateSuccessor()
 	{
-		List<Assignment> assignments = getAllPossibleAssignments();
-		Assignment nextAssignment = assignments.get((int)(Math.random()*assignments.size()));
-		network.pushAssignment(nextAssignment);
+		if(changeable.length == 0)
+		{
+			return;
+		}
+		int v = changeable[random.nextInt(changeable.length)];
+		move(v, random.nextInt(n) + 1);
+		listConflicts(v);
+	}
+
+	/**
+	 * Min-conflicts step: a random variable in conflict takes the value that
+	 * lowers the score the most, ties broken at random, staying put being one
+	 * of the choices. Now and then it takes a random value instead.
+	 * @return false if only given variables are in conflict, i.e. the puzzle has no solution
+	 */
+	public boolean generateMinConflictsSuccessor()
+	{
+		int v = pickConflictedVariable();
+		if(v < 0)
+		{
+			return false;
+		}
+		if(random.nextDouble() < WALK_PROBABILITY)
+		{
+			move(v, random.nextInt(n) + 1);
+			listConflicts(v);
+			return true;
+		}
+
+		Variable var = network.getVariable(v);
+		best.setVariable(var);
+		best.setValue(values[v]);
+		best.setScore(0);
+		candidate.setVariable(var);
+		int ties = 1;
+		for(int value = 1; value <= n; value++)
+		{
+			if(value == values[v])
+			{
+				continue;
+			}
+			candidate.setValue(value);
+			candidate.setScore(getDelta(v, value));
+			int order = candidate.compareTo(best);
+			if(order < 0 || (order == 0 && random.nextInt(++ties) == 0))
+			{
+				if(order < 0)
+				{
+					ties = 1;
+				}
+				best.setValue(candidate.getValue());
+				best.setScore(candidate.getScore());
+			}
+		}
+		move(v, best.getValue());
+		listConflicts(v);
+		return true;
+	}
+
+	/**
+	 * Annealing step: swaps the values of two random cells of a random block
+	 * if the swap lowers the score, or with probability exp(-delta / T)
+	 * otherwise. Cools every stepsPerTemperature steps and reheats once no new
+	 * best score has been reached for reheatAfter steps.
+	 */
+	public void generateAnnealingSuccessor()
+	{
+		if(swappableBlocks.length == 0)
+		{
+			return;
+		}
+		int[] cells = blockCells[swappableBlocks[random.nextInt(swappableBlocks.length)]];
+		int i = random.nextInt(cells.length);
+		int j = random.nextInt(cells.length - 1);
+		if(j >= i)
+		{
+			j++;
+		}
+		int u = cells[i];
+		int w = cells[j];
+		int delta = getSwapDelta(u, w);
+		if(delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature))
+		{
+			int value = values[u];
+			move(u, values[w]);
+			move(w, value);
+		}
+
+		if(score < bestScore)
+		{
+			bestScore = score;
+			stallSteps = 0;
+		}
+		else if(++stallSteps > reheatAfter)
+		{
+			countRestart();
+			temperature = startTemperature;
+			bestScore = score;
+			stallSteps = 0;
+		}
+		if(++stepsAtTemperature >= stepsPerTemperature)
+		{
+			temperature *= coolingRate;
+			stepsAtTemperature = 0;
+		}
+	}
+
+	/**
+	 * Tabu step: makes the move of a variable in conflict that lowers the
+	 * score the most, ties broken at random, leaving out the tabu moves that
+	 * don't reach a new best score. The value left becomes tabu for the
+	 * variable. Restarts once no new best score has been reached for
+	 * the restart limit.
+	 * @return false if only given variables are in conflict, i.e. the puzzle has no solution
+	 */
+	public boolean generateTabuSuccessor()
+	{
+		numAttempts++;
+		boolean found = false;
+		int ties = 0;
+		int k = 0;
+		while(k < numConflicted)
+		{
+			int v = conflicted[k];
+			if(conflictsOf(v) == 0)
+			{
+				isListed[v] = false;
+				conflicted[k] = conflicted[--numConflicted];
+				continue;
+			}
+			k++;
+			candidate.setVariable(network.getVariable(v));
+			for(int value = 1; value <= n; value++)
+			{
+				if(value == values[v])
+				{
+					continue;
+				}
+				int delta = getDelta(v, value);
+				if(tabuUntil[v * (n + 1) + value] > numAttempts && score + delta >= bestScore)
+				{
+					continue;
+				}
+				candidate.setValue(value);
+				candidate.setScore(delta);
+				int order = found ? candidate.compareTo(best) : -1;
+				if(order < 0 || (order == 0 && random.nextInt(++ties) == 0))
+				{
+					if(order < 0)
+					{
+						ties = 1;
+					}
+					best.setVariable(candidate.getVariable());
+					best.setValue(value);
+					best.setScore(delta);
+					found = true;
+				}
+			}
+		}
+		if(numConflicted == 0)
+		{
+			return false;
+		}
+
+		if(found)
+		{
+			int v = best.getVariable().getIndex();
+			int old = values[v];
+			move(v, best.getValue());
+			listConflicts(v);
+			tabuUntil[v * (n + 1) + old] = numAttempts + random.nextInt(TABU_RANDOM_TENURE) + (int) (TABU_TENURE_FACTOR * numConflicted);
+		}
+		if(score < bestScore)
+		{
+			bestScore = score;
+			stallSteps = 0;
+		}
+		else if(++stallSteps > getRestartLimit())
+		{
+			countRestart();
+			generateStartState();
+			startTabu();
+		}
+		return true;
 	}
+
 	/**
 	 * @return list of all possible Variable/Value assignments in the puzzle
 	 */
@@ -130,21 +582,273 @@ public class LocalSolver implements Runnable{
 		return assignments;
 	}
 
+	/**
+	 * @return change of the score if variable v took <tt>value</tt>
+	 */
+	public int getDelta(int v, int value)
+	{
+		int old = values[v];
+		if(old == value)
+		{
+			return 0;
+		}
+		int delta = 0;
+		for(int c : constraintsOf[v])
+		{
+			delta += occupancy[c][value] - (occupancy[c][old] - 1);
+		}
+		return 2 * delta;
+	}
+
+	/**
+	 * @return change of the score if variables u and w swapped their values
+	 */
+	public int getSwapDelta(int u, int w)
+	{
+		int delta = getDelta(u, values[w]) + getDelta(w, values[u]);
+		//the counts of a constraint holding both are left unchanged, but each
+		//delta above counted 2 for moving the value into it
+		for(int c : constraintsOf[u])
+		{
+			for(int d : constraintsOf[w])
+			{
+				if(c == d)
+				{
+					delta -= 4;
+				}
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * Gives variable v a new value, updating the counts and the score.
+	 */
+	private void move(int v, int value)
+	{
+		int old = values[v];
+		if(old == value)
+		{
+			return;
+		}
+		values[v] = value;
+		for(int c : constraintsOf[v])
+		{
+			score -= 2 * --occupancy[c][old];
+			score += 2 * occupancy[c][value]++;
+		}
+	}
+
+	/**
+	 * Lists the changeable variables that share a constraint and the value of v.
+	 */
+	private void listConflicts(int v)
+	{
+		int value = values[v];
+		for(int c : constraintsOf[v])
+		{
+			if(occupancy[c][value] > 1)
+			{
+				for(Variable other : network.getConstraints().get(c).vars)
+				{
+					int u = other.getIndex();
+					if(values[u] == value && !isListed[u] && other.isChangeable())
+					{
+						list(u);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives the changeable variables of each block the values its givens
+	 * miss, in random order.
+	 */
+	private void fillBlocks()
+	{
+		boolean[] given = new boolean[n + 1];
+		int[] missing = new int[n];
+		for(int b = 0; b < n; b++)
+		{
+			Arrays.fill(given, false);
+			for(Variable v : network.getVariables())
+			{
+				if(v.block() == b && !v.isChangeable())
+				{
+					given[v.getAssignment()] = true;
+				}
+			}
+			int numMissing = 0;
+			for(int value = 1; value <= n; value++)
+			{
+				if(!given[value])
+				{
+					missing[numMissing++] = value;
+				}
+			}
+			int[] cells = blockCells[b];
+			for(int i = 0; i < cells.length; i++)
+			{
+				//conflicting givens leave fewer values than cells, the rest stay random
+				if(i < numMissing)
+				{
+					int k = i + random.nextInt(numMissing - i);
+					int value = missing[k];
+					missing[k] = missing[i];
+					missing[i] = value;
+					values[cells[i]] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts annealing from the current state, deriving the parameters left
+	 * unset.
+	 */
+	private void startAnnealing()
+	{
+		if(stepsPerTemperature == 0)
+		{
+			for(int[] cells : blockCells)
+			{
+				stepsPerTemperature += cells.length * (cells.length - 1) / 2;
+			}
+			stepsPerTemperature = Math.max(stepsPerTemperature, 1);
+		}
+		if(reheatAfter == 0)
+		{
+			reheatAfter = 50 * stepsPerTemperature;
+		}
+		startTemperature = initialTemperature;
+		if(startTemperature <= 0 && swappableBlocks.length > 0)
+		{
+			double sum = 0, sumOfSquares = 0;
+			for(int k = 0; k < TEMPERATURE_SAMPLES; k++)
+			{
+				int[] cells = blockCells[swappableBlocks[random.nextInt(swappableBlocks.length)]];
+				int i = random.nextInt(cells.length);
+				int j = random.nextInt(cells.length - 1);
+				int delta = getSwapDelta(cells[i], cells[j >= i ? j + 1 : j]);
+				sum += delta;
+				sumOfSquares += (double) delta * delta;
+			}
+			double mean = sum / TEMPERATURE_SAMPLES;
+			startTemperature = Math.sqrt(Math.max(sumOfSquares / TEMPERATURE_SAMPLES - mean * mean, 0));
+		}
+		startTemperature = Math.max(startTemperature, 1);
+		temperature = startTemperature;
+		stepsAtTemperature = 0;
+		bestScore = score;
+		stallSteps = 0;
+	}
+
+	/**
+	 * Starts tabu search from the current state with no move tabu.
+	 */
+	private void startTabu()
+	{
+		Arrays.fill(tabuUntil, 0);
+		numAttempts = 0;
+		bestScore = score;
+		stallSteps = 0;
+	}
+
+	/**
+	 * Lowers the shared best score to the current one, if better, without
+	 * locking.
+	 */
+	private void shareScore()
+	{
+		int best = sharedBestScore.get();
+		while(score < best && !sharedBestScore.compareAndSet(best, score))
+		{
+			best = sharedBestScore.get();
+		}
+	}
+
+	private void countStep()
+	{
+		numTotalAttempts++;
+		if(monitor != null)
+		{
+			monitor.nodeVisited(0);
+		}
+	}
+
+	private void countRestart()
+	{
+		numRestarts++;
+		if(monitor != null)
+		{
+			monitor.failure(0);
+		}
+	}
+
+	/**
+	 * @return number of other variables sharing a constraint and the value of v
+	 */
+	private int conflictsOf(int v)
+	{
+		int conflicts = 0;
+		for(int c : constraintsOf[v])
+		{
+			conflicts += occupancy[c][values[v]] - 1;
+		}
+		return conflicts;
+	}
+
+	private void list(int v)
+	{
+		isListed[v] = true;
+		conflicted[numConflicted++] = v;
+	}
+
+	/**
+	 * Variables whose conflicts were resolved since they were listed are
+	 * dropped as they are drawn.
+	 * @return a random changeable variable in conflict, -1 if there is none
+	 */
+	private int pickConflictedVariable()
+	{
+		while(numConflicted > 0)
+		{
+			int k = random.nextInt(numConflicted);
+			int v = conflicted[k];
+			if(conflictsOf(v) > 0)
+			{
+				return v;
+			}
+			isListed[v] = false;
+			conflicted[k] = conflicted[--numConflicted];
+		}
+		return -1;
+	}
+
 	private void success()
 	{
 		endTime = System.currentTimeMillis();
+		long outputStart = System.nanoTime();
 		System.out.println("Solution found!");
+		for(int v : changeable)
+		{
+			network.getVariable(v).assignValue(values[v]);
+		}
 		sudokuGrid = Converter.ConstraintNetworkToSudokuFile(network, sudokuGrid.getN(), sudokuGrid.getP(), sudokuGrid.getQ());
+		if(monitor != null)
+		{
+			monitor.phaseTimed(SearchMonitor.Phase.Search, outputStart - searchStart);
+			monitor.phaseTimed(SearchMonitor.Phase.Output, System.nanoTime() - outputStart);
+		}
 	}
 
+	/**
+	 * @return ordered pairs of variables sharing a constraint and a value in the current state
+	 */
 	public int getNetworkScore()
 	{
-		int networkScore = 0;
-		for(Constraint c : network.getConstraints())
-		{
-			networkScore += c.getConflicts();
-		}
-		return networkScore;
+		return score;
 	}
 
 	//===============================================================================
@@ -156,13 +860,62 @@ public class LocalSolver implements Runnable{
 		if (!Thread.currentThread().isInterrupted())
 		{
 			startTime = System.currentTimeMillis();
+			searchStart = System.nanoTime();
+			if(monitor != null)
+			{
+				monitor.phaseTimed(SearchMonitor.Phase.Conversion, conversionNanos);
+			}
 			generateStartState();
+			if(strategy == Strategy.Annealing)
+			{
+				startAnnealing();
+			}
+			else if(strategy == Strategy.Tabu)
+			{
+				startTabu();
+			}
 
 			while(!isSolution())
 			{
-				restartCounter();
-				generateSuccessor();
-				//int score = getNetworkScore();
+				if(Thread.currentThread().isInterrupted() || (sharedBestScore != null && sharedBestScore.get() == 0))
+				{
+					endTime = System.currentTimeMillis();
+					if(monitor != null)
+					{
+						monitor.phaseTimed(SearchMonitor.Phase.Search, System.nanoTime() - searchStart);
+					}
+					return;
+				}
+				boolean moved = true;
+				switch(strategy)
+				{
+				case RandomWalk:
+					restartCounter();
+					generateSuccessor();
+					break;
+				case MinConflicts:
+					restartCounter();
+					moved = generateMinConflictsSuccessor();
+					break;
+				case Annealing:
+					countStep();
+					generateAnnealingSuccessor();
+					break;
+				case Tabu:
+					countStep();
+					moved = generateTabuSuccessor();
+					break;
+				}
+				if(!moved)
+				{
+					System.out.println("The given values conflict");
+					endTime = System.currentTimeMillis();
+					return;
+				}
+				if(sharedBestScore != null)
+				{
+					shareScore();
+				}
 			}
 
 			success();
@@ -0,0 +1,235 @@
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cspSolver.LocalSolver.Strategy;
+import sudoku.SudokuFile;
+
+/**
+ * Runs several independent local search walkers on the same puzzle, one
+ * thread each. Every walker builds its own ConstraintNetwork from the
+ * SudokuFile and draws from its own Random, so they share nothing but the
+ * best score reached so far, an AtomicInteger they lower without locking.
+ * The first walker to bring it to 0 has solved the puzzle, and the others
+ * stop at their next step when they see it.
+ */
+public class ParallelLocalSolver implements Solver{
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private SudokuFile sudokuGrid;
+	private List<LocalSolver> walkers = new ArrayList<LocalSolver>();
+	private AtomicInteger bestScore = new AtomicInteger(Integer.MAX_VALUE);
+
+	private LocalSolver winner;
+	private long startTime;
+	private long endTime;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param sf puzzle to solve
+	 * @param numWalkers number of walkers, each on its own thread
+	 * @param strategy search strategy of every walker
+	 */
+	public ParallelLocalSolver(SudokuFile sf, int numWalkers, Strategy strategy)
+	{
+		this.sudokuGrid = sf;
+		for(int i = 0; i < Math.max(1, numWalkers); i++)
+		{
+			LocalSolver walker = new LocalSolver(sf);
+			walker.setStrategy(strategy);
+			walker.setSharedBestScore(bestScore);
+			walkers.add(walker);
+		}
+	}
+
+	/**
+	 * Runs one tabu search walker per core.
+	 * @param sf puzzle to solve
+	 */
+	public ParallelLocalSolver(SudokuFile sf)
+	{
+		this(sf, Runtime.getRuntime().availableProcessors(), Strategy.Tabu);
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * @param seed seed of the first walker, the others get the following seeds
+	 */
+	public void setRandomSeed(long seed)
+	{
+		for(int i = 0; i < walkers.size(); i++)
+		{
+			walkers.get(i).setRandomSeed(seed + i);
+		}
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public boolean hasSolution()
+	{
+		return winner != null;
+	}
+
+	public SudokuFile getSolution()
+	{
+		return winner == null ? sudokuGrid : winner.getSolution();
+	}
+
+	/**
+	 * @return the walker that found the solution, null if none did
+	 */
+	public LocalSolver getWinner()
+	{
+		return winner;
+	}
+
+	/**
+	 * @return lowest score reached by any walker, 0 once solved
+	 */
+	public int getBestScore()
+	{
+		return bestScore.get();
+	}
+
+	public void printSolverStats()
+	{
+		System.out.println("Local search with " + walkers.size() + " walkers");
+		System.out.println("Time taken:" + (endTime-startTime) + " ms");
+		if(winner != null)
+		{
+			System.out.println("Solved by walker " + walkers.indexOf(winner));
+			winner.printSolverStats();
+		}
+		else
+		{
+			System.out.println("Best score:" + bestScore.get());
+		}
+	}
+
+	/**
+	 * Local search does no preprocessing.
+	 */
+	public long getPreprocessingStartTime()
+	{
+		return startTime;
+	}
+
+	public long getPreprocessingEndTime()
+	{
+		return startTime;
+	}
+
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	/**
+	 * @return steps taken by all walkers
+	 */
+	public long getNumAssignments()
+	{
+		long total = 0;
+		for(LocalSolver walker : walkers)
+		{
+			total += walker.getNumAssignments();
+		}
+		return total;
+	}
+
+	/**
+	 * @return restarts made by all walkers
+	 */
+	public long getNumBacktracks()
+	{
+		long total = 0;
+		for(LocalSolver walker : walkers)
+		{
+			total += walker.getNumBacktracks();
+		}
+		return total;
+	}
+
+	//===============================================================================
+	// Solver
+	//===============================================================================
+
+	/**
+	 * Runs all walkers and waits for the first solution, or until every
+	 * walker gives up, or until this thread is interrupted. Walkers still
+	 * running afterwards are interrupted.
+	 */
+	public void solve()
+	{
+		startTime = System.currentTimeMillis();
+		List<Callable<LocalSolver>> tasks = new ArrayList<Callable<LocalSolver>>();
+		for(final LocalSolver walker : walkers)
+		{
+			tasks.add(new Callable<LocalSolver>(){
+
+				@Override
+				public LocalSolver call() throws Exception {
+					walker.run();
+					if(!walker.hasSolution())
+					{
+						throw new Exception("walker found no solution");
+					}
+					return walker;
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(walkers.size());
+		try
+		{
+			winner = executor.invokeAny(tasks);
+		}catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}catch(ExecutionException e)
+		{
+			//no walker found a solution
+		}finally
+		{
+			executor.shutdownNow();
+		}
+		endTime = System.currentTimeMillis();
+
+		//give interrupted walkers a moment to unwind so their counts are final
+		try
+		{
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		solve();
+	}
+}
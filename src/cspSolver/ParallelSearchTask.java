@@ -0,0 +1,157 @@
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One subtree of a parallel backtracking search. Above the split depth of
+ * its BTSolver, a task propagates its network, picks the variable to branch
+ * on with the solver's heuristics and forks one task per value, each on its
+ * own clone of the network. At the split depth it searches its subtree
+ * sequentially. Idle ForkJoinPool threads steal the forked subtrees.
+ *
+ * All tasks of a search share one stop flag, set by the first worker to
+ * find a solution, which makes the others give up.
+ */
+class ParallelSearchTask extends RecursiveTask<BTSolver> {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private static final long serialVersionUID = 1L;
+
+	private BTSolver settings;			//solver whose heuristics every worker copies
+	private ConstraintNetwork network;
+	private int depth;
+	private AtomicBoolean stop;
+	private AtomicLong numAssignments;	//shared by all tasks of the search
+	private AtomicLong numBacktracks;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param settings solver whose heuristics and split depth are used
+	 * @param network network to search, owned by this task
+	 * @param depth number of decisions made above this task
+	 * @param stop flag shared by all tasks of the search
+	 */
+	ParallelSearchTask(BTSolver settings, ConstraintNetwork network, int depth, AtomicBoolean stop)
+	{
+		this(settings, network, depth, stop, new AtomicLong(), new AtomicLong());
+	}
+
+	private ParallelSearchTask(BTSolver settings, ConstraintNetwork network, int depth, AtomicBoolean stop,
+			AtomicLong numAssignments, AtomicLong numBacktracks)
+	{
+		this.settings = settings;
+		this.network = network;
+		this.depth = depth;
+		this.stop = stop;
+		this.numAssignments = numAssignments;
+		this.numBacktracks = numBacktracks;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @return assignments made by all tasks of the search so far
+	 */
+	long getNumAssignments()
+	{
+		return numAssignments.get();
+	}
+
+	/**
+	 * @return backtracks made by all tasks of the search so far
+	 */
+	long getNumBacktracks()
+	{
+		return numBacktracks.get();
+	}
+
+	//===============================================================================
+	// RecursiveTask
+	//===============================================================================
+
+	/**
+	 * @return the worker that solved the network, null if this subtree has no
+	 * solution or the search was stopped
+	 */
+	@Override
+	protected BTSolver compute()
+	{
+		if(stop.get())
+		{
+			return null;
+		}
+		BTSolver worker = settings.createWorker(network);
+		worker.setStopFlag(stop);
+
+		if(depth >= settings.getSplitDepth())
+		{
+			try
+			{
+				worker.solve();
+			}finally
+			{
+				//also counts the work of a worker stopped early
+				numAssignments.addAndGet(worker.getNumAssignments());
+				numBacktracks.addAndGet(worker.getNumBacktracks());
+			}
+			return worker.hasSolution() ? worker : null;
+		}
+
+		Variable v;
+		try
+		{
+			v = worker.expand();
+		}catch(VariableSelectionException e)
+		{
+			System.out.println("error with variable selection heuristic.");
+			return null;
+		}
+		if(worker.hasSolution())
+		{
+			return worker;
+		}
+		if(v == null)
+		{
+			return null;
+		}
+
+		List<ParallelSearchTask> subtrees = new ArrayList<ParallelSearchTask>();
+		for(Integer value : worker.getNextValues(v))
+		{
+			ConstraintNetwork clone = new ConstraintNetwork(network);
+			clone.getVariable(v.getIndex()).updateDomain(value);
+			subtrees.add(new ParallelSearchTask(settings, clone, depth + 1, stop, numAssignments, numBacktracks));
+		}
+		numAssignments.addAndGet(subtrees.size());
+		//the network is no longer needed once cloned
+		network = null;
+
+		invokeAll(subtrees);
+		BTSolver winner = null;
+		for(ParallelSearchTask subtree : subtrees)
+		{
+			BTSolver result = subtree.join();
+			if(result == null)
+			{
+				numBacktracks.incrementAndGet();
+			}
+			else if(winner == null)
+			{
+				winner = result;
+			}
+		}
+		return winner;
+	}
+}
@@ -0,0 +1,248 @@
+package cspSolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import cspSolver.BTSolver.ConsistencyCheck;
+import cspSolver.BTSolver.ValueSelectionHeuristic;
+import cspSolver.BTSolver.VariableSelectionHeuristic;
+import sudoku.SudokuFile;
+
+/**
+ * Races several solver configurations on the same puzzle, one thread each.
+ * Every configuration builds its own ConstraintNetwork from the SudokuFile,
+ * so they share no state. The first configuration to find a solution wins
+ * and all others are interrupted.
+ */
+public class PortfolioSolver implements Solver{
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private SudokuFile sudokuGrid;
+	private List<Solver> solvers = new ArrayList<Solver>();
+	private List<String> descriptions = new ArrayList<String>();
+	private int numThreads;
+
+	private Solver winner;
+	private String winnerDescription;
+	private long startTime;
+	private long endTime;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * @param sf puzzle to solve
+	 * @param numThreads maximum number of configurations running at once
+	 */
+	public PortfolioSolver(SudokuFile sf, int numThreads)
+	{
+		this.sudokuGrid = sf;
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Runs every configuration on its own thread.
+	 * @param sf puzzle to solve
+	 */
+	public PortfolioSolver(SudokuFile sf)
+	{
+		this(sf, Integer.MAX_VALUE);
+	}
+
+	//===============================================================================
+	// Modifiers
+	//===============================================================================
+
+	/**
+	 * Adds a backtracking configuration to the race.
+	 */
+	public void addConfiguration(VariableSelectionHeuristic varsh, ValueSelectionHeuristic valsh, ConsistencyCheck cc)
+	{
+		BTSolver solver = new BTSolver(sudokuGrid);
+		solver.setVariableSelectionHeuristic(varsh);
+		solver.setValueSelectionHeuristic(valsh);
+		solver.setConsistencyChecks(cc);
+		solvers.add(solver);
+		descriptions.add("BTSolver " + varsh + "/" + valsh + "/" + cc);
+	}
+
+	/**
+	 * Adds a local search run to the race.
+	 */
+	public void addLocalSearch()
+	{
+		solvers.add(new LocalSolver(sudokuGrid));
+		descriptions.add("LocalSolver");
+	}
+
+	/**
+	 * Adds a spread of backtracking configurations, from cheap checks with
+	 * fixed ordering to full all-different filtering.
+	 */
+	public void addDefaultConfigurations()
+	{
+		addConfiguration(VariableSelectionHeuristic.MinimumRemainingValue, ValueSelectionHeuristic.None, ConsistencyCheck.AllDifferent);
+		addConfiguration(VariableSelectionHeuristic.DomWdeg, ValueSelectionHeuristic.None, ConsistencyCheck.UnitPropagation);
+		addConfiguration(VariableSelectionHeuristic.MRV_DH, ValueSelectionHeuristic.LeastConstrainingValue, ConsistencyCheck.UnitPropagation);
+		addConfiguration(VariableSelectionHeuristic.None, ValueSelectionHeuristic.None, ConsistencyCheck.AllDifferent);
+		addConfiguration(VariableSelectionHeuristic.DomWdeg, ValueSelectionHeuristic.LeastConstrainingValue, ConsistencyCheck.ForwardChecking);
+		addConfiguration(VariableSelectionHeuristic.MinimumRemainingValue, ValueSelectionHeuristic.None, ConsistencyCheck.ForwardChecking);
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public boolean hasSolution()
+	{
+		return winner != null;
+	}
+
+	public SudokuFile getSolution()
+	{
+		return winner == null ? sudokuGrid : winner.getSolution();
+	}
+
+	/**
+	 * @return the solver that found the solution, null if none did
+	 */
+	public Solver getWinner()
+	{
+		return winner;
+	}
+
+	public void printSolverStats()
+	{
+		System.out.println("Portfolio of " + solvers.size() + " configurations on " + Math.min(numThreads, solvers.size()) + " threads");
+		System.out.println("Time taken:" + (endTime-startTime) + " ms");
+		if(winner != null)
+		{
+			System.out.println("Solved by: " + winnerDescription);
+			winner.printSolverStats();
+		}
+	}
+
+	public long getPreprocessingStartTime()
+	{
+		return winner == null ? startTime : winner.getPreprocessingStartTime();
+	}
+
+	public long getPreprocessingEndTime()
+	{
+		return winner == null ? startTime : winner.getPreprocessingEndTime();
+	}
+
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	/**
+	 * @return assignments made by all configurations
+	 */
+	public long getNumAssignments()
+	{
+		long total = 0;
+		for(Solver solver : solvers)
+		{
+			total += solver.getNumAssignments();
+		}
+		return total;
+	}
+
+	/**
+	 * @return backtracks made by all configurations
+	 */
+	public long getNumBacktracks()
+	{
+		long total = 0;
+		for(Solver solver : solvers)
+		{
+			total += solver.getNumBacktracks();
+		}
+		return total;
+	}
+
+	//===============================================================================
+	// Solver
+	//===============================================================================
+
+	/**
+	 * Runs all configurations and waits for the first solution, or until every
+	 * configuration gives up, or until this thread is interrupted. Configurations
+	 * still running afterwards are interrupted.
+	 */
+	public void solve()
+	{
+		startTime = System.currentTimeMillis();
+		if(solvers.isEmpty())
+		{
+			addDefaultConfigurations();
+		}
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for(int i = 0; i < solvers.size(); i++)
+		{
+			final int position = i;
+			tasks.add(new Callable<Integer>(){
+
+				@Override
+				public Integer call() throws Exception {
+					Solver solver = solvers.get(position);
+					solver.run();
+					if(!solver.hasSolution())
+					{
+						throw new Exception(descriptions.get(position) + " found no solution");
+					}
+					return position;
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, solvers.size())));
+		try
+		{
+			int position = executor.invokeAny(tasks);
+			winner = solvers.get(position);
+			winnerDescription = descriptions.get(position);
+		}catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}catch(ExecutionException e)
+		{
+			//no configuration found a solution
+		}finally
+		{
+			executor.shutdownNow();
+		}
+		endTime = System.currentTimeMillis();
+		
+		//give interrupted configurations a moment to unwind so their counts are final
+		try
+		{
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		solve();
+	}
+}
@@ -0,0 +1,45 @@
+package cspSolver;
+
+/**
+ * Receives measurements from a solver as it runs. A solver without a
+ * monitor skips all measuring beyond a null check, so leaving it unset
+ * costs close to nothing.
+ *
+ * BTSolver reports one node per assignment, at the depth of the decision,
+ * and a failure when the propagation after it wipes out a domain. LocalSolver
+ * reports each step as a node and each restart as a failure, all at depth 0.
+ *
+ * @see BTSolver#setSearchMonitor(SearchMonitor)
+ * @see LocalSolver#setSearchMonitor(SearchMonitor)
+ * @see SearchStatistics
+ */
+public interface SearchMonitor {
+
+	public enum Phase { Conversion, Preprocessing, Search, Output };
+
+	/**
+	 * Called once a phase is over. 
+	 * @param nanos time spent in <tt>phase</tt>, in nanoseconds
+	 */
+	public void phaseTimed(Phase phase, long nanos);
+
+	/**
+	 * Called for every node of the search.
+	 */
+	public void nodeVisited(int depth);
+
+	/**
+	 * Called for every node found to be a dead end.
+	 */
+	public void failure(int depth);
+
+	/**
+	 * Called after each propagation with the number of values it removed.
+	 */
+	public void valuesPruned(int depth, int count);
+
+	/**
+	 * Called after each propagation with the size of the trail.
+	 */
+	public void trailSize(int size);
+}
@@ -0,0 +1,52 @@
+package cspSolver;
+
+import java.util.Random;
+
+/**
+ * Random generator of the restarts, with the same sequence as 
+ * java.util.Random but a state that can be read and set, so that a 
+ * checkpoint can store it as a single long.
+ */
+class SearchRandom extends Random {
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	private long state;
+
+	SearchRandom(long seed)
+	{
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed)
+	{
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+
+	/**
+	 * @return the 48 bits the next values are drawn from
+	 */
+	long getState()
+	{
+		return state;
+	}
+
+	/**
+	 * @param state value returned by getState()
+	 */
+	void setState(long state)
+	{
+		this.state = state & MASK;
+	}
+}
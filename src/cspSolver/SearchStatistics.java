@@ -0,0 +1,142 @@
+package cspSolver;
+
+import java.util.Arrays;
+
+/**
+ * SearchMonitor that keeps totals: time per phase, nodes and failures per
+ * depth, values pruned per propagation, and the largest trail seen.
+ * Not thread safe, each solver needs its own.
+ */
+public class SearchStatistics implements SearchMonitor {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private long[] phaseNanos = new long[Phase.values().length];
+	private long[] nodesByDepth = new long[64];
+	private long[] failuresByDepth = new long[64];
+	private int maxDepth = -1;
+
+	private long numPropagations;
+	private long totalPruned;
+	private int maxPruned;
+	private int maxTrailSize;
+
+	//===============================================================================
+	// SearchMonitor
+	//===============================================================================
+
+	@Override
+	public void phaseTimed(Phase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	@Override
+	public void nodeVisited(int depth) {
+		ensureDepth(depth);
+		nodesByDepth[depth]++;
+	}
+
+	@Override
+	public void failure(int depth) {
+		ensureDepth(depth);
+		failuresByDepth[depth]++;
+	}
+
+	@Override
+	public void valuesPruned(int depth, int count) {
+		numPropagations++;
+		totalPruned += count;
+		maxPruned = Math.max(maxPruned, count);
+	}
+
+	@Override
+	public void trailSize(int size) {
+		maxTrailSize = Math.max(maxTrailSize, size);
+	}
+
+	private void ensureDepth(int depth)
+	{
+		if(depth >= nodesByDepth.length)
+		{
+			int length = Math.max(depth + 1, nodesByDepth.length * 2);
+			nodesByDepth = Arrays.copyOf(nodesByDepth, length);
+			failuresByDepth = Arrays.copyOf(failuresByDepth, length);
+		}
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @return nanoseconds spent in <tt>phase</tt>
+	 */
+	public long getPhaseNanos(Phase phase)
+	{
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return deepest depth at which a node was visited, -1 if none was
+	 */
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	public long getNodes(int depth)
+	{
+		return depth <= maxDepth ? nodesByDepth[depth] : 0;
+	}
+
+	public long getFailures(int depth)
+	{
+		return depth <= maxDepth ? failuresByDepth[depth] : 0;
+	}
+
+	public long getNumPropagations()
+	{
+		return numPropagations;
+	}
+
+	public long getTotalPruned()
+	{
+		return totalPruned;
+	}
+
+	/**
+	 * @return most values removed by a single propagation
+	 */
+	public int getMaxPruned()
+	{
+		return maxPruned;
+	}
+
+	public int getMaxTrailSize()
+	{
+		return maxTrailSize;
+	}
+
+	public void printStatistics()
+	{
+		for(Phase phase : Phase.values())
+		{
+			System.out.println(String.format("%s: %.3f ms", phase, phaseNanos[phase.ordinal()] / 1e6));
+		}
+		System.out.println("Propagations: " + numPropagations + ", values pruned: " + totalPruned 
+				+ " (" + String.format("%.1f", numPropagations == 0 ? 0.0 : (double) totalPruned / numPropagations) 
+				+ " per propagation, at most " + maxPruned + ")");
+		System.out.println("Max trail size: " + maxTrailSize);
+		System.out.println("depth\tnodes\tfailures");
+		for(int depth = 0; depth <= maxDepth; depth++)
+		{
+			if(nodesByDepth[depth] != 0 || failuresByDepth[depth] != 0)
+			{
+				System.out.println(depth + "\t" + nodesByDepth[depth] + "\t" + failuresByDepth[depth]);
+			}
+		}
+	}
+}
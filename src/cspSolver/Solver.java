@@ -0,0 +1,41 @@
+package cspSolver;
+
+import sudoku.SudokuFile;
+
+/**
+ * Common view of the solvers, used by SudokuSolver and PortfolioSolver to
+ * run a solver on its own thread and report on it. Solvers are expected to
+ * stop when their thread is interrupted. 
+ */
+public interface Solver extends Runnable {
+
+	/** 
+	 * @return true if a solution has been found, false otherwise. 
+	 */
+	public boolean hasSolution();
+	
+	/**
+	 * @return solution if a solution has been found, otherwise returns the unsolved puzzle.
+	 */
+	public SudokuFile getSolution();
+	
+	public void printSolverStats();
+	
+	public long getPreprocessingStartTime();
+	
+	public long getPreprocessingEndTime();
+	
+	public long getStartTime();
+	
+	public long getEndTime();
+	
+	/**
+	 * @return number of search nodes, i.e. assignments or local search steps
+	 */
+	public long getNumAssignments();
+	
+	/**
+	 * @return number of dead ends, i.e. backtracks or local search restarts
+	 */
+	public long getNumBacktracks();
+}
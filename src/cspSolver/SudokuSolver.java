@@ -17,12 +17,14 @@ import java.io.*;
 public class SudokuSolver{
 	
 	private static SudokuFile sf;
-	private static BTSolver solver;
+	private static Solver solver;
+	private static SearchStatistics statistics;	//set by the STATS token
 	private static int timeLimit = 60000;
 	private static long startTime;
 	private static long preStart;
 	private static long preEnd;
 	private static long timeoutTime;
+	private static int checkpointInterval = 60;	//seconds, set by the CHECKPOINT_INTERVAL token
 	
 	public static void main(String args[]){
 		startTime = System.currentTimeMillis();
@@ -69,13 +71,73 @@ public class SudokuSolver{
 	}
 	
 	public static void solve(ArrayList<String> tokens){
-		solver = new BTSolver(sf);
-		
-//		solver.setConsistencyChecks(ConsistencyCheck.None);
-//		solver.setValueSelectionHeuristic(ValueSelectionHeuristic.None);
-//		solver.setVariableSelectionHeuristic(VariableSelectionHeuristic.None);
-		
-		setToken(solver, tokens);
+		File resumed = null;	//checkpoint the search was resumed from
+		if(containsToken(tokens, "PORTFOLIO"))
+		{
+			//races the default configurations, other tokens are ignored
+			solver = new PortfolioSolver(sf);
+		}
+		else if(containsToken(tokens, "DLX"))
+		{
+			//exact cover search, other tokens are ignored
+			solver = new DLXSolver(sf);
+		}
+		else if(containsToken(tokens, "LOCAL") || tokenValue(tokens, "LOCAL") != null)
+		{
+			//local search, only WALKERS, PARALLEL, SEED and, with one walker, STATS apply
+			solver = createLocalSolver(tokens);
+		}
+		else
+		{
+			BTSolver btSolver = new BTSolver(sf);
+			
+//			btSolver.setConsistencyChecks(ConsistencyCheck.None);
+//			btSolver.setValueSelectionHeuristic(ValueSelectionHeuristic.None);
+//			btSolver.setVariableSelectionHeuristic(VariableSelectionHeuristic.None);
+			
+			setToken(btSolver, tokens);
+			if(containsToken(tokens, "STATS"))
+			{
+				statistics = new SearchStatistics();
+				btSolver.setSearchMonitor(statistics);
+			}
+			solver = btSolver;
+			
+			String resumePath = tokenValue(tokens, "RESUME");
+			String checkpointPath = tokenValue(tokens, "CHECKPOINT");
+			if((resumePath != null || checkpointPath != null) && containsToken(tokens, "PARALLEL"))
+			{
+				//only a sequential search can be paused, saved and restored
+				System.err.println("Warning: PARALLEL is ignored with CHECKPOINT and RESUME, the search runs on one thread");
+				btSolver.setParallelism(1);
+			}
+			if(resumePath != null)
+			{
+				try
+				{
+					btSolver.resumeFrom(new File(resumePath));
+					resumed = new File(resumePath);
+				}catch(IOException e)
+				{
+					System.err.println("Error: cannot resume from " + resumePath + ": " + e.getMessage());
+				}
+			}
+			if(checkpointPath != null)
+			{
+				String interval = tokenValue(tokens, "CHECKPOINT_INTERVAL");
+				if(interval != null)
+				{
+					checkpointInterval = Integer.parseInt(interval);
+				}
+				File checkpoint = new File(checkpointPath);
+				if(solveWithCheckpoints(btSolver, checkpoint))
+				{
+					deleteCheckpoint(checkpoint);
+					deleteCheckpoint(resumed);
+				}
+				return;
+			}
+		}
 		
 		Thread t1 = new Thread(solver);
 		try
@@ -85,11 +147,96 @@ public class SudokuSolver{
 			if(t1.isAlive())
 			{
 				t1.interrupt();
+				//a parallel search adds up its counts as its workers stop
+				t1.join(1000);
+			}
+			else
+			{
+				//the resumed search is over
+				deleteCheckpoint(resumed);
 			}
 		}catch(InterruptedException e)
 		{
 		}
-
+		preStart = solver.getPreprocessingStartTime();
+		preEnd = solver.getPreprocessingEndTime();
+		if(statistics != null)
+		{
+			try
+			{
+				//the statistics are complete once the solver has unwound
+				t1.join();
+			}catch(InterruptedException e)
+			{
+			}
+			statistics.printStatistics();
+		}
+	}
+	
+	/**
+	 * Runs the search in slices of checkpointInterval seconds, pausing it 
+	 * after each slice to save it, until it is over or the time limit is 
+	 * reached. A search that times out is saved once more before returning, 
+	 * so the RESUME token can continue it. 
+	 * @return true if the search is over, in which case the checkpoint is stale
+	 */
+	private static boolean solveWithCheckpoints(final BTSolver btSolver, File checkpoint)
+	{
+		long deadline = System.currentTimeMillis() + timeLimit;
+		try
+		{
+			while(!btSolver.isFinished())
+			{
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+				{
+					break;
+				}
+				Thread t1 = new Thread(new Runnable(){
+					
+					@Override
+					public void run() {
+						btSolver.resume();
+					}
+				});
+				t1.start();
+				t1.join(Math.min(checkpointInterval * 1000L, remaining));
+				if(t1.isAlive())
+				{
+					btSolver.pause();
+					t1.join();
+				}
+				if(!btSolver.isFinished())
+				{
+					btSolver.writeCheckpoint(checkpoint);
+				}
+			}
+		}catch(InterruptedException e)
+		{
+		}catch(IOException e)
+		{
+			System.err.println("Error: cannot write checkpoint " + checkpoint + ": " + e.getMessage());
+		}
+		preStart = solver.getPreprocessingStartTime();
+		preEnd = solver.getPreprocessingEndTime();
+		if(statistics != null)
+		{
+			statistics.printStatistics();
+		}
+		return btSolver.isFinished();
+	}
+	
+	/**
+	 * Deletes the checkpoint of a search that is over, so that it cannot be
+	 * resumed again by mistake. 
+	 * @param checkpoint checkpoint file, may be null
+	 */
+	private static void deleteCheckpoint(File checkpoint)
+	{
+		if(checkpoint != null && checkpoint.exists() && !checkpoint.delete())
+		{
+			System.err.println("Warning: cannot delete checkpoint " + checkpoint);
+		}
 	}
 	
 	public static void outputSolToFile(SudokuFile sf, String outputPath){
@@ -103,8 +250,8 @@ public class SudokuSolver{
 
 		try (PrintWriter writer = new PrintWriter(outputPath, "UTF-8")){
 			writer.format("TOTAL_START=%s%n", Long.toString(startTime/1000));
-			writer.format("PREPROCESSING_START=%s%n", Long.toString(startTime/1000));//No AC developed
-			writer.format("PREPROCESSING_DONE=%s%n", Long.toString(startTime/1000));//No AC developed
+			writer.format("PREPROCESSING_START=%s%n", Long.toString(preStart/1000));
+			writer.format("PREPROCESSING_DONE=%s%n", Long.toString(preEnd/1000));
 			writer.format("SEARCH_START=%s%n", Long.toString(solver.getStartTime()/1000));
 			writer.format("SEARCH_DONE=%s%n", Long.toString(solver.getEndTime()/1000));
 			writer.format("SOLUTION_TIME=%s%n", Long.toString((preEnd-preStart+solver.getEndTime()-solver.getStartTime())/1000));
@@ -141,8 +288,8 @@ public class SudokuSolver{
 	public static void outputNoSolToFile(SudokuFile sf, String outputPath){
 		try (PrintWriter writer = new PrintWriter(outputPath, "UTF-8")){
 			writer.format("TOTAL_START=%s%n", Long.toString(startTime/1000));
-			writer.format("PREPROCESSING_START=%s%n", Long.toString(startTime/1000));//No AC developed
-			writer.format("PREPROCESSING_DONE=%s%n", Long.toString(startTime/1000));//No AC developed
+			writer.format("PREPROCESSING_START=%s%n", Long.toString(preStart/1000));
+			writer.format("PREPROCESSING_DONE=%s%n", Long.toString(preEnd/1000));
 			writer.format("SEARCH_START=%s%n", Long.toString(solver.getStartTime()/1000));
 			writer.format("SEARCH_DONE=%s%n", Long.toString(timeoutTime/1000));
 			writer.format("SOLUTION_TIME=%s%n", Long.toString((preEnd-preStart+timeoutTime-solver.getStartTime())/1000));
@@ -184,12 +331,85 @@ public class SudokuSolver{
 		}
 	}
 	
+	private static boolean containsToken(ArrayList<String> tokens, String token){
+		for(String t : tokens){
+			if(t.toUpperCase().equals(token)){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Builds the local search selected by LOCAL=strategy (tabu search for a
+	 * bare LOCAL), run by WALKERS=k parallel walkers, or one per core with
+	 * PARALLEL.
+	 */
+	private static Solver createLocalSolver(ArrayList<String> tokens){
+		LocalSolver.Strategy strategy = LocalSolver.Strategy.Tabu;
+		String name = tokenValue(tokens, "LOCAL");
+		if(name != null){
+			boolean found = false;
+			for(LocalSolver.Strategy s : LocalSolver.Strategy.values()){
+				if(s.name().equalsIgnoreCase(name)){
+					strategy = s;
+					found = true;
+				}
+			}
+			if(!found){
+				System.err.println("Error: Invalid local search strategy: " + name);
+			}
+		}
+		int numWalkers = containsToken(tokens, "PARALLEL") ? Runtime.getRuntime().availableProcessors() : 1;
+		String walkers = tokenValue(tokens, "WALKERS");
+		if(walkers != null){
+			numWalkers = Integer.parseInt(walkers);
+		}
+		String seed = tokenValue(tokens, "SEED");
+		
+		if(numWalkers > 1){
+			if(containsToken(tokens, "STATS")){
+				System.err.println("Warning: STATS is ignored with several walkers, it only measures a single one");
+			}
+			ParallelLocalSolver parallelSolver = new ParallelLocalSolver(sf, numWalkers, strategy);
+			if(seed != null){
+				parallelSolver.setRandomSeed(Long.parseLong(seed));
+			}
+			return parallelSolver;
+		}
+		LocalSolver localSolver = new LocalSolver(sf);
+		localSolver.setStrategy(strategy);
+		if(seed != null){
+			localSolver.setRandomSeed(Long.parseLong(seed));
+		}
+		if(containsToken(tokens, "STATS")){
+			statistics = new SearchStatistics();
+			localSolver.setSearchMonitor(statistics);
+		}
+		return localSolver;
+	}
+	
+	/**
+	 * @return the value of the first KEY=value token, with its case kept, or null
+	 */
+	private static String tokenValue(ArrayList<String> tokens, String key){
+		for(String t : tokens){
+			int separator = t.indexOf('=');
+			if(separator > 0 && t.substring(0, separator).toUpperCase().equals(key)){
+				return t.substring(separator + 1);
+			}
+		}
+		return null;
+	}
+	
 	public static void setToken(BTSolver solver, ArrayList<String> tokens){
 		solver.setConsistencyChecks(ConsistencyCheck.None);
 		solver.setValueSelectionHeuristic(ValueSelectionHeuristic.None);
 		solver.setVariableSelectionHeuristic(VariableSelectionHeuristic.None);
 		boolean MRV = false;
 		boolean DH = false;
+		boolean CBJ = false;
+		boolean FC = false;
 		
 		for(int i = 0; i < tokens.size(); i++){
 			String t = tokens.get(i).toUpperCase();
@@ -201,17 +421,57 @@ public class SudokuSolver{
 				solver.setVariableSelectionHeuristic(VariableSelectionHeuristic.Degree);
 				DH = true;
 			}
+			else if (t.equals("WDEG")){
+				solver.setVariableSelectionHeuristic(VariableSelectionHeuristic.DomWdeg);
+			}
 			else if (t.equals("LCV")){
 				solver.setValueSelectionHeuristic(ValueSelectionHeuristic.LeastConstrainingValue);
 			}
 			else if (t.equals("FC")){
 				solver.setConsistencyChecks(ConsistencyCheck.ForwardChecking);
+				FC = true;
+			}
+			else if (t.equals("UNIT")){
+				solver.setConsistencyChecks(ConsistencyCheck.UnitPropagation);
+				FC = false;
+			}
+			else if (t.equals("ALLDIFF")){
+				solver.setConsistencyChecks(ConsistencyCheck.AllDifferent);
+				FC = false;
 			}
 			else if (t.equals("ACP")){
-				solver.setConsistencyChecks(ConsistencyCheck.ArcConsistency);
+				solver.setArcConsistencyPreprocessing(true);
 			}
 			else if (t.equals("MAC")){
-				solver.setConsistencyChecks(ConsistencyCheck.None);
+				solver.setConsistencyChecks(ConsistencyCheck.ArcConsistency);
+				FC = false;
+			}
+			else if (t.equals("STATS")){
+				//the monitor is attached by solve(tokens)
+			}
+			else if (t.equals("CBJ")){
+				solver.setBackjumping(true);
+				CBJ = true;
+			}
+			else if (t.equals("NOGOODS")){
+				solver.setBackjumping(true);
+				CBJ = true;
+				solver.setNogoodLimit(1000);
+			}
+			else if (t.equals("RESTARTS") || t.equals("RESTARTS=LUBY")){
+				solver.setRestartSchedule(BTSolver.RestartSchedule.Luby);
+			}
+			else if (t.equals("RESTARTS=GEOMETRIC")){
+				solver.setRestartSchedule(BTSolver.RestartSchedule.Geometric);
+			}
+			else if (t.startsWith("SEED=")){
+				solver.setRandomSeed(Long.parseLong(t.substring("SEED=".length())));
+			}
+			else if (t.equals("PARALLEL")){
+				solver.setParallelism(Runtime.getRuntime().availableProcessors());
+			}
+			else if (t.startsWith("CHECKPOINT=") || t.startsWith("CHECKPOINT_INTERVAL=") || t.startsWith("RESUME=")){
+				//handled by solve(tokens)
 			}
 			else {
 				System.err.println("Error: Invalid input Token: " + t);
@@ -221,6 +481,9 @@ public class SudokuSolver{
 		if (MRV && DH){
 			solver.setVariableSelectionHeuristic(VariableSelectionHeuristic.MRV_DH);
 		}
+		if (CBJ && !FC){
+			System.err.println("Warning: CBJ and NOGOODS need FC, the search backtracks chronologically");
+		}
 	}
 	
 }
\ No newline at end of file
@@ -1,83 +1,182 @@
 package cspSolver;
 
+import java.util.Arrays;
 import java.util.EmptyStackException;
-import java.util.Stack;
 
 /**
- * Represents the trail of changes made. This allows backtracking to occur. 
- * Trail follows the singleton design pattern. 
+ * Represents the trail of changes made. This allows backtracking to occur.
+ * Each ConstraintNetwork owns its own trail, so solvers working on 
+ * different networks never share undo history.
+ *
+ * Each entry records a single value removed from a variable's domain, as the
+ * index of the variable in its network and the value, kept in growable 
+ * primitive stacks so that neither push nor undo allocate.
  */
 public class Trail {
-	
+
 	//===============================================================================
 	// Properties
 	//===============================================================================
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private ConstraintNetwork network;
+	private int[] variableIndices = new int[INITIAL_CAPACITY];
+	private int[] removedValues = new int[INITIAL_CAPACITY];
+	private int size;
+
+	private int[] breadcrumbs = new int[INITIAL_CAPACITY];
+	private int numBreadcrumbs;
 	
-	private static Stack<Object[]> trail = new Stack<Object[]>();
-	private static final Trail TRAIL = new Trail();
-	private static Stack<Integer> breadcrumbs = new Stack<Integer>();
-	private Trail()
-	{}
+	private DomainListener[] listeners = new DomainListener[0];
+
+	/**
+	 * @param network network whose variables the trail records changes of
+	 */
+	public Trail(ConstraintNetwork network)
+	{
+		this.network = network;
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	public int size()
+	{
+		return size;
+	}
 	
 	/**
-	 * returns the trail.
-	 * @return
+	 * @param i position of an entry, 0 being the oldest
+	 * @return index of the variable whose domain changed
 	 */
-	public static Trail getTrail()
+	int getVariableIndex(int i)
 	{
-		return TRAIL;
+		return variableIndices[i];
 	}
 	
-	public static void clearTrail()
+	/**
+	 * @param i position of an entry, 0 being the oldest
+	 * @return the value that was removed
+	 */
+	int getRemovedValue(int i)
 	{
-		trail.clear();
+		return removedValues[i];
 	}
-	//===============================================================================
-	// Accessors
-	//===============================================================================
 	
-	public int size()
+	int getNumBreadcrumbs()
 	{
-		return trail.size();
+		return numBreadcrumbs;
 	}
 	
+	/**
+	 * @param i position of a marker, 0 being the oldest
+	 * @return size of the trail when the marker was placed
+	 */
+	int getBreadcrumb(int i)
+	{
+		return breadcrumbs[i];
+	}
+
 	//===============================================================================
 	// Modifiers
 	//===============================================================================
-	
+
 	/**
-	 * places a marker at the current point in the trail. Each time undo is called, the 
-	 * latest marker is popped and the trail 
+	 * places a marker at the current point in the trail. Each time undo is called, the
+	 * latest marker is popped and the trail
 	 */
 	public void placeBreadCrumb()
 	{
-		breadcrumbs.add(trail.size());
+		if(numBreadcrumbs == breadcrumbs.length)
+		{
+			breadcrumbs = Arrays.copyOf(breadcrumbs, numBreadcrumbs * 2);
+		}
+		breadcrumbs[numBreadcrumbs++] = size;
 	}
+
 	/**
-	 * Adds a deep copy of a variable and its domain onto the trail.
-	 * @param v Variable to copy onto the trail
+	 * Records that <tt>removedValue</tt> was removed from the domain of v.
+	 * @param v Variable of the trail's network whose domain changed
+	 * @param removedValue the value that was removed
 	 */
-	public void push(Variable v)
+	public void push(Variable v, int removedValue)
 	{
-		Object[] vPair = { v, new Domain(v.getDomain())};
-		trail.push(vPair);
+		if(size == variableIndices.length)
+		{
+			variableIndices = Arrays.copyOf(variableIndices, size * 2);
+			removedValues = Arrays.copyOf(removedValues, size * 2);
+		}
+		variableIndices[size] = v.getIndex();
+		removedValues[size] = removedValue;
+		size++;
+		for(DomainListener listener : listeners)
+		{
+			listener.valueRemoved(v, removedValue);
+		}
 	}
-	
+
 	/**
-	 * Pops changes pushed onto the trail until it reaches the latest marker. 
-	 * Also pops the latest marker. 
-	 * @param targetSize target position on the trail to backtrack to
+	 * Pops changes pushed onto the trail until it reaches the latest marker,
+	 * putting each removed value back into its domain.
+	 * Also pops the latest marker.
 	 * @throws EmptyStackException if trail is empty
 	 */
-	public void undo() throws EmptyStackException 
+	public void undo() throws EmptyStackException
 	{
-		int targetSize = breadcrumbs.pop();
-		for (int size = trail.size(); size > targetSize; size--)
+		if(numBreadcrumbs == 0)
+		{
+			throw new EmptyStackException();
+		}
+		int targetSize = breadcrumbs[--numBreadcrumbs];
+		while(size > targetSize)
 		{
-			Object[] vPair = trail.pop();
-			Variable v = (Variable) vPair[0];
-			v.setDomain((Domain) vPair[1]);
+			size--;
+			Variable v = network.getVariable(variableIndices[size]);
+			v.restoreValue(removedValues[size]);
+			for(DomainListener listener : listeners)
+			{
+				listener.valueRestored(v, removedValues[size]);
+			}
+		}
+	}
+	
+	/**
+	 * Registers a listener to be told about every removal pushed onto the
+	 * trail and every value restored by undo(). 
+	 * @param listener the listener to add
+	 */
+	public void addListener(DomainListener listener)
+	{
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+	
+	/**
+	 * @param listener the listener to remove, if registered
+	 */
+	public void removeListener(DomainListener listener)
+	{
+		for(int i = 0; i < listeners.length; i++)
+		{
+			if(listeners[i] == listener)
+			{
+				DomainListener[] remaining = new DomainListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, remaining, 0, i);
+				System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+				listeners = remaining;
+				return;
+			}
 		}
 	}
-}
 
+	/**
+	 * Forgets all changes and markers without restoring anything.
+	 */
+	public void clear()
+	{
+		size = 0;
+		numBreadcrumbs = 0;
+	}
+}
@@ -0,0 +1,299 @@
+package cspSolver;
+
+import java.util.List;
+
+/**
+ * Sudoku style propagation over the NotEquals constraints of a
+ * ConstraintNetwork (its rows, columns and blocks, or units):
+ *
+ * - naked singles: a variable left with one value removes it from its neighbors.
+ * - hidden singles: a value that fits only one variable of a unit is assigned to it.
+ * - a value that no longer fits anywhere in its unit is a failure.
+ *
+ * The last two only apply to units with as many variables as values, where
+ * every value has to be used. For those, the number of variables whose domain
+ * still holds each value is kept per unit. Registered as a DomainListener on
+ * the network's Trail, the counts follow every removal and undo, and the
+ * removals that leave a variable with one value, or a value with at most one
+ * place, are queued for the next call to propagate().
+ */
+public class UnitPropagator implements DomainListener {
+
+	//===============================================================================
+	// Properties
+	//===============================================================================
+
+	private ConstraintNetwork network;
+	private int[][] counts;				//[constraint index][value]
+	private boolean[] isPermutation;	//by constraint index, true if every value must be used
+
+	//naked singles, a ring buffer holding each variable at most once
+	private Variable[] singles;
+	private boolean[] isSingleQueued;
+	private int singlesHead;
+	private int singlesSize;
+
+	//(constraint, value) pairs whose count dropped to 1 or 0, a ring buffer holding each pair at most once
+	private int[] unitEvents;
+	private boolean[] isUnitEventQueued;
+	private int unitEventsHead;
+	private int unitEventsSize;
+	private int numValues;
+
+	//===============================================================================
+	// Constructors
+	//===============================================================================
+
+	/**
+	 * Builds the counts from the current domains of the network. Every
+	 * assigned variable and every value with at most one place is queued, so
+	 * the first call to propagate() covers the whole network.
+	 * @param network network to propagate
+	 */
+	public UnitPropagator(ConstraintNetwork network)
+	{
+		this.network = network;
+		List<Constraint> constraints = network.getConstraints();
+		List<Variable> variables = network.getVariables();
+
+		numValues = 1;
+		for(Variable v : variables)
+		{
+			for(int value = v.getDomain().lowestValue(); value != 0; value = v.getDomain().nextValue(value))
+			{
+				numValues = Math.max(numValues, value + 1);
+			}
+		}
+
+		counts = new int[constraints.size()][numValues];
+		isPermutation = new boolean[constraints.size()];
+		singles = new Variable[variables.size()];
+		isSingleQueued = new boolean[variables.size()];
+		unitEvents = new int[constraints.size() * numValues];
+		isUnitEventQueued = new boolean[constraints.size() * numValues];
+
+		for(Constraint c : constraints)
+		{
+			int[] count = counts[c.getIndex()];
+			int numPresent = 0;
+			for(Variable v : c.vars)
+			{
+				for(int value = v.getDomain().lowestValue(); value != 0; value = v.getDomain().nextValue(value))
+				{
+					if(count[value]++ == 0)
+					{
+						numPresent++;
+					}
+				}
+			}
+			isPermutation[c.getIndex()] = numPresent == c.size();
+			for(int value = 1; value < numValues; value++)
+			{
+				if(count[value] <= 1)
+				{
+					queueUnitEvent(c, value);
+				}
+			}
+		}
+		for(Variable v : variables)
+		{
+			if(v.size() == 1)
+			{
+				queueSingle(v);
+			}
+		}
+	}
+
+	//===============================================================================
+	// Accessors
+	//===============================================================================
+
+	/**
+	 * @param c a constraint of the network
+	 * @param value a value
+	 * @return number of variables of c whose domain holds <tt>value</tt>
+	 */
+	public int getCount(Constraint c, int value)
+	{
+		return value < numValues ? counts[c.getIndex()][value] : 0;
+	}
+
+	//===============================================================================
+	// Propagation
+	//===============================================================================
+
+	/**
+	 * Applies naked and hidden singles until nothing changes. Removals go onto
+	 * the trail. On failure the pending work is dropped, as the caller is
+	 * expected to undo back past the changes that caused it.
+	 * @return false if a domain is wiped out, two neighbors hold the same value,
+	 * or a value has no place left in a unit that needs it.
+	 */
+	public boolean propagate()
+	{
+		while(singlesSize > 0 || unitEventsSize > 0)
+		{
+			if(singlesSize > 0)
+			{
+				Variable v = singles[singlesHead];
+				isSingleQueued[v.getIndex()] = false;
+				singlesHead = (singlesHead + 1) % singles.length;
+				singlesSize--;
+
+				if(v.size() == 1 && !propagateSingle(v))
+				{
+					clear();
+					return false;
+				}
+			}
+			else
+			{
+				int event = unitEvents[unitEventsHead];
+				isUnitEventQueued[event] = false;
+				unitEventsHead = (unitEventsHead + 1) % unitEvents.length;
+				unitEventsSize--;
+
+				if(!propagateUnit(network.getConstraints().get(event / numValues), event % numValues))
+				{
+					clear();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Naked single: removes the value of v from all its neighbors.
+	 */
+	private boolean propagateSingle(Variable v)
+	{
+		int value = v.getDomain().lowestValue();
+		for(Constraint c : network.getConstraintsContainingVariable(v))
+		{
+			for(Variable vOther : c.vars)
+			{
+				if(vOther == v || !vOther.getDomain().contains(value))
+				{
+					continue;
+				}
+				if(vOther.size() == 1)
+				{
+					c.incrementWeight();
+					return false;
+				}
+				vOther.removeValueFromDomain(value);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hidden single: a needed value with a single place is assigned there.
+	 */
+	private boolean propagateUnit(Constraint c, int value)
+	{
+		if(!isPermutation[c.getIndex()])
+		{
+			return true;
+		}
+		int count = counts[c.getIndex()][value];
+		if(count == 0)
+		{
+			c.incrementWeight();
+			return false;
+		}
+		if(count == 1)
+		{
+			for(Variable v : c.vars)
+			{
+				if(v.getDomain().contains(value))
+				{
+					if(v.size() > 1)
+					{
+						v.updateDomain(value);
+					}
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if some removal has not been propagated yet
+	 */
+	public boolean hasPendingWork()
+	{
+		return singlesSize > 0 || unitEventsSize > 0;
+	}
+
+	/**
+	 * Drops all pending work.
+	 */
+	public void clear()
+	{
+		for(; singlesSize > 0; singlesSize--)
+		{
+			isSingleQueued[singles[singlesHead].getIndex()] = false;
+			singlesHead = (singlesHead + 1) % singles.length;
+		}
+		for(; unitEventsSize > 0; unitEventsSize--)
+		{
+			isUnitEventQueued[unitEvents[unitEventsHead]] = false;
+			unitEventsHead = (unitEventsHead + 1) % unitEvents.length;
+		}
+	}
+
+	//===============================================================================
+	// DomainListener
+	//===============================================================================
+
+	@Override
+	public void valueRemoved(Variable v, int value) {
+		for(Constraint c : network.getConstraintsContainingVariable(v))
+		{
+			if(--counts[c.getIndex()][value] <= 1)
+			{
+				queueUnitEvent(c, value);
+			}
+		}
+		if(v.size() == 1)
+		{
+			queueSingle(v);
+		}
+	}
+
+	@Override
+	public void valueRestored(Variable v, int value) {
+		for(Constraint c : network.getConstraintsContainingVariable(v))
+		{
+			counts[c.getIndex()][value]++;
+		}
+	}
+
+	//===============================================================================
+	// Helper Methods
+	//===============================================================================
+
+	private void queueSingle(Variable v)
+	{
+		if(!isSingleQueued[v.getIndex()])
+		{
+			isSingleQueued[v.getIndex()] = true;
+			singles[(singlesHead + singlesSize) % singles.length] = v;
+			singlesSize++;
+		}
+	}
+
+	private void queueUnitEvent(Constraint c, int value)
+	{
+		int event = c.getIndex() * numValues + value;
+		if(isPermutation[c.getIndex()] && !isUnitEventQueued[event])
+		{
+			isUnitEventQueued[event] = true;
+			unitEvents[(unitEventsHead + unitEventsSize) % unitEvents.length] = event;
+			unitEventsSize++;
+		}
+	}
+}
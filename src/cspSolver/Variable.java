@@ -2,6 +2,7 @@ package cspSolver;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Variable implements Iterable<Integer> 
 {
@@ -9,15 +10,14 @@ public class Variable implements Iterable<Integer>
 	// Properties
 	//===============================================================================
 	
-	private static int namingCounter = 1;
+	private static AtomicInteger namingCounter = new AtomicInteger(1);
 	private Domain domain;	
 	private int row, col, block;
 	private boolean modified;
 	private boolean unchangeable;
 	private String name;
-	private static Trail trail = Trail.getTrail();
-	
-	private int oldSize;
+	private int index = -1;
+	private Trail trail;
 	
 	//===============================================================================
 	// Constructors
@@ -34,8 +34,7 @@ public class Variable implements Iterable<Integer>
 		this.row = row;
 		this.col = col;
 		this.block = block;
-		this.name = "v" + namingCounter++;
-		this.oldSize = size();
+		this.name = "v" + namingCounter.getAndIncrement();
 	}
 	
 	public Variable(Variable v)
@@ -48,6 +47,20 @@ public class Variable implements Iterable<Integer>
 		this.name = v.name;
 	}
 	
+	/**
+	 * Used to clone a ConstraintNetwork. Unlike the copy constructor, the copy
+	 * gets its own domain, so changing one does not change the other. It
+	 * belongs to no network until it is added to one.
+	 * @return a copy of this variable with a copy of its current domain
+	 */
+	Variable copy()
+	{
+		Variable v = new Variable(this);
+		v.domain = new Domain(domain);
+		v.unchangeable = unchangeable;
+		return v;
+	}
+	
 	//===============================================================================
 	// Accessors
 	//===============================================================================
@@ -106,7 +119,7 @@ public class Variable implements Iterable<Integer>
 		}
 		else
 		{
-			return domain.getValues().get(0);
+			return domain.lowestValue();
 		}
 	}
 	
@@ -130,10 +143,31 @@ public class Variable implements Iterable<Integer>
 		return name;
 	}
 	
+	/**
+	 * @return position of this variable in its ConstraintNetwork, -1 if it has not been added to one.
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+	
 	//===============================================================================
 	// Modifiers
 	//===============================================================================
 	
+	void setIndex(int index)
+	{
+		this.index = index;
+	}
+	
+	/**
+	 * @param trail the Trail of the ConstraintNetwork this variable belongs to
+	 */
+	void setTrail(Trail trail)
+	{
+		this.trail = trail;
+	}
+	
 	/** 
 	 * Used for local Search
 	 * @param val new assignment
@@ -144,17 +178,40 @@ public class Variable implements Iterable<Integer>
 	}
 	
 	/**
-	 * Used for Backtracking. Adds the changed domain to the Trail.
+	 * Used for Backtracking. Narrows the domain to the values also found in d,
+	 * adding each removed value to the Trail.
 	 * @param d new domain
 	 */
 	public void updateDomain(Domain d)
 	{
-		methodModifiesDomain();
-		
-		if(!domain.equals(d))
+		int val = domain.lowestValue();
+		while(val != 0)
 		{
-			domain = d;
-			modified = true;
+			int next = domain.nextValue(val);
+			if(!d.contains(val))
+			{
+				removeValueFromDomain(val);
+			}
+			val = next;
+		}
+	}
+	
+	/**
+	 * Used for Backtracking. Same as updateDomain(new Domain(val)) without
+	 * allocating a Domain.
+	 * @param val the only value to keep
+	 */
+	public void updateDomain(int val)
+	{
+		int other = domain.lowestValue();
+		while(other != 0)
+		{
+			int next = domain.nextValue(other);
+			if(other != val)
+			{
+				removeValueFromDomain(other);
+			}
+			other = next;
 		}
 	}
 	
@@ -172,28 +229,26 @@ public class Variable implements Iterable<Integer>
 	}
 	
 	/**
-	 * Removes a single value from the domain of V.
+	 * Removes a single value from the domain of V. The removal is recorded on
+	 * the Trail if the variable belongs to a ConstraintNetwork. 
 	 * @param val value to remove
 	 */
 	public void removeValueFromDomain(int val) {
-		methodModifiesDomain();
-		domain.remove(val);
+		if(domain.remove(val) && trail != null)
+		{
+			trail.push(this, val);
+		}
 		this.modified=domain.isModified();
 	}
 	
-	//===============================================================================
-	// Helper Methods
-	//===============================================================================
-	
-	public void methodModifiesDomain()
+	/**
+	 * Used by the Trail to undo a removal. 
+	 * @param val value to put back into the domain
+	 */
+	void restoreValue(int val)
 	{
-		int newSize = size();
-		if (oldSize > newSize)
-		{
-			oldSize = newSize;
-		}
-			
-		trail.push(this);
+		domain.add(val);
+		modified = true;
 	}
 	
 	//===============================================================================
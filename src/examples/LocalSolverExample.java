@@ -3,13 +3,30 @@ package examples;
 import sudoku.SudokuBoardGenerator;
 import sudoku.SudokuFile;
 import cspSolver.LocalSolver;
+import cspSolver.LocalSolver.Strategy;
+import cspSolver.ParallelLocalSolver;
+import cspSolver.Solver;
 
 public class LocalSolverExample {
 
+	/**
+	 * @param args optional number of parallel walkers, 1 by default
+	 */
 	public static void main(String[] args)
 	{
 		SudokuFile sf = SudokuBoardGenerator.generateBoard(16, 4, 4, 25);
-		LocalSolver solver = new LocalSolver(sf);
+		int numWalkers = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		Solver solver;
+		if(numWalkers > 1)
+		{
+			solver = new ParallelLocalSolver(sf, numWalkers, Strategy.Tabu);
+		}
+		else
+		{
+			LocalSolver localSolver = new LocalSolver(sf);
+			localSolver.setStrategy(Strategy.Tabu);
+			solver = localSolver;
+		}
 		
 		Thread t1 = new Thread(solver);
 		try
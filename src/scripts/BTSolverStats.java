@@ -4,7 +4,16 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import sudoku.SudokuBoardReader;
 import sudoku.SudokuFile;
@@ -12,37 +21,67 @@ import cspSolver.BTSolver;
 import cspSolver.BTSolver.ConsistencyCheck;
 import cspSolver.BTSolver.ValueSelectionHeuristic;
 import cspSolver.BTSolver.VariableSelectionHeuristic;
+import cspSolver.SudokuSolver;
 
+/**
+ * Batch runner for the backtracking solver.
+ *
+ * Usage: BTSolverStats [directory] [threads] [configuration ...]
+ *
+ * Every puzzle of the directory is solved with every configuration. A
+ * configuration is a comma separated list of SudokuSolver tokens, e.g.
+ * MRV,DH,FC. Puzzles are solved concurrently on a fixed pool of threads and
+ * each one is interrupted after TIMEOUT_MS. Defaults are ExampleSudokuFiles/,
+ * one thread per core and the solver without heuristics.
+ */
 public class BTSolverStats {
 
-	// Change these to test different configurations for the solver. 
+	// Used by testSolver(BTSolver). Change these to test different configurations for the solver.
 	static ConsistencyCheck cc = ConsistencyCheck.None;
 	static ValueSelectionHeuristic valsh = ValueSelectionHeuristic.None;
 	static VariableSelectionHeuristic varsh = VariableSelectionHeuristic.None;
-	
+
+	// Time each puzzle is given before its solver is interrupted.
+	static long TIMEOUT_MS = 60000;
+
 	public static List<SudokuFile> getPuzzlesFromFolder(File folder) {
-	    List<SudokuFile> puzzles = new ArrayList<SudokuFile>();
-		for (File fileEntry : folder.listFiles()) {
-    		SudokuFile sfPE = SudokuBoardReader.readFile(fileEntry.getPath());
-    		if(sfPE.getN() != 0)
-    		{
-    			puzzles.add(sfPE);
-    		}
-	    }
+		return getPuzzlesFromFolder(folder, new ArrayList<String>());
+	}
+
+	/**
+	 * Reads the puzzles of a folder in file name order.
+	 * @param names receives the file name of each puzzle returned
+	 */
+	public static List<SudokuFile> getPuzzlesFromFolder(File folder, List<String> names) {
+		List<SudokuFile> puzzles = new ArrayList<SudokuFile>();
+		File[] files = folder.listFiles();
+		if(files == null)
+		{
+			return puzzles;
+		}
+		Arrays.sort(files);
+		for (File fileEntry : files) {
+			SudokuFile sfPE = SudokuBoardReader.readFile(fileEntry.getPath());
+			if(sfPE.getN() != 0)
+			{
+				puzzles.add(sfPE);
+				names.add(fileEntry.getName());
+			}
+		}
 		return puzzles;
 	}
-	
+
 	public static runStats testSolver(BTSolver solver)
 	{
 		solver.setConsistencyChecks(cc);
 		solver.setValueSelectionHeuristic(valsh);
 		solver.setVariableSelectionHeuristic(varsh);
-		
+
 		Thread t1 = new Thread(solver);
 		try
 		{
 			t1.start();
-			t1.join(60000);
+			t1.join(TIMEOUT_MS);
 			if(t1.isAlive())
 			{
 				t1.interrupt();
@@ -51,8 +90,8 @@ public class BTSolverStats {
 		{
 		}
 		long runtime;
-		int numAssignments;
-		int numBacktracks;
+		long numAssignments;
+		long numBacktracks;
 		boolean isSolution;
 		runStats rs;
 		runtime = solver.getTimeTaken();
@@ -62,8 +101,104 @@ public class BTSolverStats {
 		rs = new runStats(runtime, numAssignments, numBacktracks, isSolution);
 		return rs;
 	}
-	
-	public static void main(String[] args)
+
+	/**
+	 * Solves one puzzle on the calling thread, which is interrupted once the
+	 * deadline passes.
+	 */
+	private static runStats solveWithDeadline(String puzzleID, SudokuFile sf, List<String> tokens, ScheduledExecutorService timer)
+	{
+		BTSolver solver = new BTSolver(sf);
+		SudokuSolver.setToken(solver, new ArrayList<String>(tokens));
+
+		Deadline deadline = new Deadline(Thread.currentThread());
+		ScheduledFuture<?> alarm = timer.schedule(deadline, TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		solver.run();
+		alarm.cancel(false);
+		deadline.disarm();
+
+		return new runStats(puzzleID, solver.getTimeTaken(), solver.getNumAssignments(), solver.getNumBacktracks(), solver.hasSolution());
+	}
+
+	/**
+	 * Interrupts a pool thread when its puzzle runs out of time. Once
+	 * disarmed it no longer interrupts, and any interrupt it already sent is
+	 * cleared, so the thread can go on to the next puzzle.
+	 */
+	private static class Deadline implements Runnable {
+		private Thread worker;
+		private boolean done;
+
+		Deadline(Thread worker)
+		{
+			this.worker = worker;
+		}
+
+		@Override
+		public synchronized void run() {
+			if(!done)
+			{
+				worker.interrupt();
+			}
+		}
+
+		void disarm()
+		{
+			synchronized(this)
+			{
+				done = true;
+			}
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Solves every puzzle with one configuration.
+	 * @return the stats of each puzzle, in the order of <tt>puzzles</tt>
+	 */
+	public static List<runStats> solveAll(final List<SudokuFile> puzzles, final List<String> names, final List<String> tokens, int numThreads)
+		throws InterruptedException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		List<Future<runStats>> futures = new ArrayList<Future<runStats>>();
+		List<runStats> statistics = new ArrayList<runStats>();
+		try
+		{
+			for(int i = 0; i < puzzles.size(); i++)
+			{
+				final int position = i;
+				futures.add(executor.submit(new Callable<runStats>(){
+
+					@Override
+					public runStats call() throws Exception {
+						return solveWithDeadline(names.get(position), puzzles.get(position), tokens, timer);
+					}
+				}));
+			}
+			for(int i = 0; i < futures.size(); i++)
+			{
+				runStats rs;
+				try
+				{
+					rs = futures.get(i).get();
+				}catch(ExecutionException e)
+				{
+					e.getCause().printStackTrace();
+					rs = new runStats(names.get(i), 0, 0, 0, false);
+				}
+				statistics.add(rs);
+				System.out.println(rs.toString());
+			}
+		}finally
+		{
+			executor.shutdownNow();
+			timer.shutdownNow();
+		}
+		return statistics;
+	}
+
+	public static void main(String[] args) throws InterruptedException
 	{
 		String sep = System.getProperty("line.separator");
 		File results = new File("BTSolverResults.txt");
@@ -78,68 +213,78 @@ public class BTSolverStats {
 		{
 			summary = new File("BTSolverSummary" + count++ + ".txt");
 		}
-		
-		File folder = new File("ExampleSudokuFiles/");
-		List<SudokuFile> puzzles = getPuzzlesFromFolder(folder);
-		List<runStats> statistics = new ArrayList<runStats>();
-		
-		puzzles = puzzles.subList(0, 10);
-		for(SudokuFile sf : puzzles)
+
+		File folder = new File(args.length > 0 ? args[0] : "ExampleSudokuFiles/");
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		List<List<String>> configurations = new ArrayList<List<String>>();
+		for(int i = 2; i < args.length; i++)
 		{
-			BTSolver solver = new BTSolver(sf);
-			statistics.add(testSolver(solver));
-			System.out.println(statistics.get(statistics.size()-1).toString());
+			configurations.add(args[i].isEmpty() ? new ArrayList<String>() : Arrays.asList(args[i].split(",")));
 		}
-		
+		if(configurations.isEmpty())
+		{
+			configurations.add(new ArrayList<String>());
+		}
+
+		List<String> names = new ArrayList<String>();
+		List<SudokuFile> puzzles = getPuzzlesFromFolder(folder, names);
+
 		try {
-			FileWriter fw = new FileWriter(results);
-			for(runStats rs : statistics)
+			FileWriter resultsWriter = new FileWriter(results);
+			FileWriter summaryWriter = new FileWriter(summary);
+			for(List<String> tokens : configurations)
 			{
-				fw.write(rs.toString() + sep);
-			}
-			fw.flush();
-			fw.close();
+				String configuration = "Configuration: " + (tokens.isEmpty() ? "none" : tokens.toString());
+				System.out.println(configuration);
 
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		try{
-			FileWriter fw = new FileWriter(summary);
-			long totalRunTime = 0;
-			long totalAssignments = 0;
-			long totalBackTracks = 0;
-			int totalSuccessful = 0;
-			int totalPuzzles = 0;
-			
-			for(runStats rs : statistics)
-			{
-				if(rs.isSolution())
+				long batchStart = System.currentTimeMillis();
+				List<runStats> statistics = solveAll(puzzles, names, tokens, numThreads);
+				long batchTime = System.currentTimeMillis() - batchStart;
+
+				resultsWriter.write(configuration + sep);
+				for(runStats rs : statistics)
+				{
+					resultsWriter.write(rs.toString() + sep);
+				}
+
+				long totalRunTime = 0;
+				long totalAssignments = 0;
+				long totalBackTracks = 0;
+				int totalSuccessful = 0;
+				int totalPuzzles = 0;
+
+				for(runStats rs : statistics)
 				{
-					totalRunTime += rs.getRuntime();
-					totalAssignments += rs.getNumAssignments();
-					totalBackTracks += rs.getNumBacktracks();
-					totalSuccessful++;
+					if(rs.isSolution())
+					{
+						totalRunTime += rs.getRuntime();
+						totalAssignments += rs.getNumAssignments();
+						totalBackTracks += rs.getNumBacktracks();
+						totalSuccessful++;
+					}
+					totalPuzzles++;
 				}
-				totalPuzzles++;
+				int divisor = Math.max(1, totalSuccessful);
+				double throughput = batchTime == 0 ? 0 : totalPuzzles * 1000.0 / batchTime;
+
+				StringBuilder sb = new StringBuilder();
+				sb.append(configuration + sep);
+				sb.append("Threads: " + numThreads + sep);
+				sb.append("Solution found for " + totalSuccessful + "/" + totalPuzzles + " puzzles" + sep);
+				sb.append("average runTime: " + (totalRunTime/divisor) + sep);
+				sb.append("average number of assignments per puzzle: " + (totalAssignments/divisor) + sep);
+				sb.append("average number of backtracks per puzzle: " + (totalBackTracks/divisor) + sep);
+				sb.append("wall time: " + batchTime + " ms" + sep);
+				sb.append(String.format("throughput: %.2f puzzles/s", throughput) + sep);
+				System.out.print(sb.toString());
+				summaryWriter.write(sb.toString() + sep);
 			}
-			
-			System.out.print("Solution found for " + totalSuccessful + "/" + totalPuzzles + "puzzles" + sep);
-			System.out.print("average runTime: " + (totalRunTime/totalSuccessful) + sep);
-			System.out.print("average number of assignments per puzzle: " + (totalAssignments/totalSuccessful) + sep);
-			System.out.print("average number of backtracks per puzzle: " + (totalBackTracks/totalSuccessful) + sep);
-			fw.write("Consistency Check: " + cc + sep);
-			fw.write("ValueSelectionHeuristic: " + valsh + sep);
-			fw.write("VariableSelectionHeuristic: " + varsh + sep);
-			fw.write("Solution found for " + totalSuccessful + "/" + totalPuzzles + "puzzles" + sep);
-			fw.write("average runTime: " + (totalRunTime/totalSuccessful) + sep);
-			fw.write("average number of assignments per puzzle: " + (totalAssignments/totalSuccessful) + sep);
-			fw.write("average number of backtracks per puzzle: " + (totalBackTracks/totalSuccessful) + sep);
-
-			fw.flush();
-			fw.close();
+			resultsWriter.flush();
+			resultsWriter.close();
+			summaryWriter.flush();
+			summaryWriter.close();
+
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 	}
@@ -0,0 +1,338 @@
+package scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import sudoku.Converter;
+import sudoku.SudokuBoardGenerator;
+import sudoku.SudokuFile;
+import cspSolver.BTSolver;
+import cspSolver.Constraint;
+import cspSolver.ConstraintNetwork;
+import cspSolver.Domain;
+import cspSolver.DomainSizeBuckets;
+import cspSolver.SudokuSolver;
+import cspSolver.Trail;
+import cspSolver.Variable;
+
+/**
+ * Microbenchmarks for the solver hot paths, and end to end solves for several
+ * heuristic combinations, on fixed seed puzzles with N = 9, 16, 25 and 36.
+ *
+ * Usage: SolverBenchmarks [filter ...]
+ *
+ * Only benchmarks whose name contains one of the filters run, all of them if
+ * none is given. Each benchmark runs in a JVM of its own, started with the
+ * same java and classpath as this one, so that no benchmark inherits the JIT
+ * profile or heap of another. There it is warmed up for WARMUP_ITERATIONS,
+ * then timed for MEASUREMENT_ITERATIONS of ITERATION_MS each. The mean time 
+ * per operation and its standard deviation over the measured iterations are
+ * printed, with a checksum of every result the operations returned.
+ *
+ * This is a plain timing loop, not JMH: one fork per benchmark, no control 
+ * over inlining or on-stack replacement, and the checksum is the only guard
+ * against dead code elimination. The numbers are not JMH-grade. Use them to
+ * compare changes on the same machine, not as absolute figures.
+ */
+public class SolverBenchmarks {
+
+	static int WARMUP_ITERATIONS = 3;
+	static int MEASUREMENT_ITERATIONS = 5;
+	static long ITERATION_MS = 500;
+	// A solve taking longer than this is interrupted and the benchmark skipped.
+	static long SOLVE_TIMEOUT_MS = 10000;
+	static long SEED = 42;
+
+	// N, p, q and number of givens of each fixture
+	static int[][] FIXTURES = { {9, 3, 3, 36}, {16, 4, 4, 116}, {25, 5, 5, 350}, {36, 6, 6, 850} };
+
+	// End to end configurations, as SudokuSolver tokens
+	static String[] CONFIGURATIONS = { "FC", "MRV,FC", "MRV,DH,LCV,FC", "WDEG,UNIT", "ALLDIFF", "ACP,MAC" };
+
+	// Every operation's result is folded in here and printed, so that nothing can be optimized away.
+	static volatile long sink;
+
+	// Argument that makes main() run a single benchmark, named exactly, in this JVM.
+	static String CASE_OPTION = "--case";
+
+	/**
+	 * One benchmark. run() performs one operation and must leave the fixture
+	 * as it found it.
+	 */
+	static abstract class Benchmark {
+		final String name;
+
+		Benchmark(String name)
+		{
+			this.name = name;
+		}
+
+		/**
+		 * @return any value depending on the work done, or -1 to give up
+		 */
+		abstract long run();
+	}
+
+	/**
+	 * @return the puzzle of a fixture, the same on every call
+	 */
+	public static SudokuFile fixture(int[] f)
+	{
+		return SudokuBoardGenerator.generateSolvableBoard(f[0], f[1], f[2], f[3], new Random(SEED + f[0]));
+	}
+
+	public static List<Benchmark> createBenchmarks()
+	{
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for(int[] f : FIXTURES)
+		{
+			addHotPathBenchmarks(benchmarks, f[0], fixture(f));
+		}
+		for(int[] f : FIXTURES)
+		{
+			for(String configuration : CONFIGURATIONS)
+			{
+				addSolveBenchmark(benchmarks, f[0], fixture(f), configuration);
+			}
+		}
+		return benchmarks;
+	}
+
+	private static void addHotPathBenchmarks(List<Benchmark> benchmarks, final int N, final SudokuFile sf)
+	{
+		final ConstraintNetwork network = Converter.SudokuFileToConstraintNetwork(sf);
+		final List<Variable> unassigned = new ArrayList<Variable>();
+		for(Variable v : network.getVariables())
+		{
+			if(!v.isAssigned())
+			{
+				unassigned.add(v);
+			}
+		}
+
+		List<Integer> values = new ArrayList<Integer>();
+		for(int value = 1; value <= N; value++)
+		{
+			values.add(value);
+		}
+		final Domain domain = new Domain(values);
+		benchmarks.add(new Benchmark("Domain.remove+add all values N=" + N){
+			@Override
+			long run() {
+				for(int value = 1; value <= N; value++)
+				{
+					domain.remove(value);
+				}
+				for(int value = 1; value <= N; value++)
+				{
+					domain.add(value);
+				}
+				return domain.size();
+			}
+		});
+
+		final Trail trail = network.getTrail();
+		benchmarks.add(new Benchmark("Trail.push+undo N removals N=" + N){
+			@Override
+			long run() {
+				trail.placeBreadCrumb();
+				for(int i = 0; i < N && i < unassigned.size(); i++)
+				{
+					Variable v = unassigned.get(i);
+					v.removeValueFromDomain(v.getDomain().lowestValue());
+				}
+				long size = trail.size();
+				trail.undo();
+				return size;
+			}
+		});
+
+		benchmarks.add(new Benchmark("ConstraintNetwork.getNeighborsOfVariable all variables N=" + N){
+			@Override
+			long run() {
+				long total = 0;
+				for(Variable v : network.getVariables())
+				{
+					total += network.getNeighborsOfVariable(v).size();
+				}
+				return total;
+			}
+		});
+
+		benchmarks.add(new Benchmark("ConstraintNetwork.getConstraintsContainingVariable all variables N=" + N){
+			@Override
+			long run() {
+				long total = 0;
+				for(Variable v : network.getVariables())
+				{
+					for(Constraint c : network.getConstraintsContainingVariable(v))
+					{
+						total += c.size();
+					}
+				}
+				return total;
+			}
+		});
+
+		final DomainSizeBuckets buckets = new DomainSizeBuckets(network);
+		benchmarks.add(new Benchmark("MRV (DomainSizeBuckets.getMRV) N=" + N){
+			@Override
+			long run() {
+				return buckets.getMRV().getIndex();
+			}
+		});
+		benchmarks.add(new Benchmark("MRV_DH (DomainSizeBuckets.getMRV_DH) N=" + N){
+			@Override
+			long run() {
+				return buckets.getMRV_DH().getIndex();
+			}
+		});
+		benchmarks.add(new Benchmark("Degree (DomainSizeBuckets.getMaxDegree) N=" + N){
+			@Override
+			long run() {
+				return buckets.getMaxDegree().getIndex();
+			}
+		});
+
+		final BTSolver lcvSolver = new BTSolver(sf);
+		final Variable lcvVariable = lcvSolver.getNetwork().getVariable(unassigned.get(0).getIndex());
+		benchmarks.add(new Benchmark("LCV (BTSolver.getValuesLCVOrder) N=" + N){
+			@Override
+			long run() {
+				return lcvSolver.getValuesLCVOrder(lcvVariable).get(0);
+			}
+		});
+
+		benchmarks.add(new Benchmark("Converter.SudokuFileToConstraintNetwork N=" + N){
+			@Override
+			long run() {
+				return Converter.SudokuFileToConstraintNetwork(sf).getConstraints().size();
+			}
+		});
+	}
+
+	private static void addSolveBenchmark(List<Benchmark> benchmarks, int N, final SudokuFile sf, String configuration)
+	{
+		final List<String> tokens = Arrays.asList(configuration.split(","));
+		benchmarks.add(new Benchmark("solve " + configuration + " N=" + N){
+			@Override
+			long run() {
+				BTSolver solver = new BTSolver(sf);
+				SudokuSolver.setToken(solver, new ArrayList<String>(tokens));
+				Thread t1 = new Thread(solver);
+				try
+				{
+					t1.start();
+					t1.join(SOLVE_TIMEOUT_MS);
+					if(t1.isAlive())
+					{
+						t1.interrupt();
+						t1.join();
+						return -1;
+					}
+				}catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+				return solver.hasSolution() ? solver.getNumAssignments() : -1;
+			}
+		});
+	}
+
+	/**
+	 * Warms up and times one benchmark, then prints its result.
+	 */
+	public static void measure(Benchmark benchmark)
+	{
+		double[] nsPerOp = new double[MEASUREMENT_ITERATIONS];
+		long totalOps = 0;
+		for(int iteration = -WARMUP_ITERATIONS; iteration < MEASUREMENT_ITERATIONS; iteration++)
+		{
+			long ops = 0;
+			long start = System.nanoTime();
+			long deadline = start + ITERATION_MS * 1000000L;
+			long now;
+			do
+			{
+				long result = benchmark.run();
+				if(result < 0)
+				{
+					System.out.println(String.format("%-70s gave up (unsolved within %d ms, checksum %d)", benchmark.name, SOLVE_TIMEOUT_MS, sink));
+					return;
+				}
+				sink += result;
+				ops++;
+				now = System.nanoTime();
+			} while(now < deadline);
+			if(iteration >= 0)
+			{
+				nsPerOp[iteration] = (double) (now - start) / ops;
+				totalOps += ops;
+			}
+		}
+
+		double mean = 0;
+		for(double value : nsPerOp)
+		{
+			mean += value;
+		}
+		mean /= nsPerOp.length;
+		double variance = 0;
+		for(double value : nsPerOp)
+		{
+			variance += (value - mean) * (value - mean);
+		}
+		double deviation = nsPerOp.length > 1 ? Math.sqrt(variance / (nsPerOp.length - 1)) : 0;
+		System.out.println(String.format("%-70s %14.1f ns/op  +- %10.1f  (%d ops, checksum %d)", benchmark.name, mean, deviation, totalOps, sink));
+	}
+
+	/**
+	 * Runs one benchmark in a new JVM and waits for it. Its output goes to 
+	 * this process's output.
+	 * @param name exact name of the benchmark
+	 */
+	public static void fork(String name) throws IOException, InterruptedException
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				SolverBenchmarks.class.getName(), CASE_OPTION, name);
+		builder.inheritIO();
+		int status = builder.start().waitFor();
+		if(status != 0)
+		{
+			System.out.println(String.format("%-70s failed (exit status %d)", name, status));
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if(args.length == 2 && args[0].equals(CASE_OPTION))
+		{
+			for(Benchmark benchmark : createBenchmarks())
+			{
+				if(benchmark.name.equals(args[1]))
+				{
+					measure(benchmark);
+				}
+			}
+			return;
+		}
+		for(Benchmark benchmark : createBenchmarks())
+		{
+			boolean selected = args.length == 0;
+			for(String filter : args)
+			{
+				selected |= benchmark.name.contains(filter);
+			}
+			if(selected)
+			{
+				fork(benchmark.name);
+			}
+		}
+	}
+}
@@ -4,19 +4,27 @@ public class runStats {
 
 	private static int numStat = 1;
 	private long runtime;
-	private int numAssignments;
-	private int numBacktracks;
+	private long numAssignments;
+	private long numBacktracks;
 	private boolean isSolution;
 	
 	private String puzzleID;
 	
-	public runStats(long runtime, int numAssignments, int numBacktracks, boolean isSolution)
+	public runStats(long runtime, long numAssignments, long numBacktracks, boolean isSolution)
+	{
+		this("puzzle" + numStat++, runtime, numAssignments, numBacktracks, isSolution);
+	}
+	
+	/**
+	 * @param puzzleID name printed for the puzzle, e.g. its file name
+	 */
+	public runStats(String puzzleID, long runtime, long numAssignments, long numBacktracks, boolean isSolution)
 	{
 		this.runtime = runtime;
 		this.numAssignments = numAssignments;
 		this.numBacktracks = numBacktracks;
 		this.isSolution = isSolution;
-		this.puzzleID = "puzzle" + numStat++;
+		this.puzzleID = puzzleID;
 	}
 	
 	public long getRuntime() {
@@ -24,12 +32,12 @@ public class runStats {
 	}
 
 
-	public int getNumAssignments() {
+	public long getNumAssignments() {
 		return numAssignments;
 	}
 
 
-	public int getNumBacktracks() {
+	public long getNumBacktracks() {
 		return numBacktracks;
 	}
 
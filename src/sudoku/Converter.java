@@ -109,6 +109,7 @@ public class Converter {
 			}
 			cn.add(c);
 		}
+		cn.buildLookupTables();
 		return cn;
 	}
 	
@@ -14,6 +14,16 @@ public class SudokuBoardGenerator {
 		//given a SudokuFile with N, P, Q, creates a board with the given params
 		//and assigns it to the board of the SudokuFile.
 		//timeout represents the time in ms allowed to created the SudokuFile
+		return generateBoard(N, p, q, numAssignments, timeout, new Random());
+	}
+	
+	/**
+	 * Same as generateBoard(N, p, q, numAssignments, timeout), with the random 
+	 * choices drawn from <tt>integerPicker</tt>, so a seeded Random always gives 
+	 * the same board.
+	 */
+	public static SudokuFile generateBoard(int N, int p, int q, int numAssignments, long timeout, Random integerPicker)
+	{
 		SudokuFile sf = new SudokuFile(N, p, q);
 		int[][] tempBoard = new int[sf.getN()][sf.getN()];
 		if(numAssignments > sf.getN()*sf.getN())
@@ -21,7 +31,6 @@ public class SudokuBoardGenerator {
 			System.out.println("Number of assignments exceeds available spaces in board. Returning SudokuFile with an empty board");
 			return sf;
 		}
-		Random integerPicker = new Random();
 		long startTime = System.currentTimeMillis();
 		long currentTime;
 		for(int i = 0; i < numAssignments; i++)
@@ -50,6 +59,79 @@ public class SudokuBoardGenerator {
 	}
 
 
+	/**
+	 * Unlike generateBoard, the board returned always has a solution. A solved
+	 * board is built from a fixed pattern, then its values, the rows within
+	 * each band of blocks, the bands, the columns within each stack of blocks
+	 * and the stacks are shuffled. <tt>numAssignments</tt> of its cells are kept.
+	 * @param random source of the shuffles, seed it for a reproducible board
+	 */
+	public static SudokuFile generateSolvableBoard(int N, int p, int q, int numAssignments, Random random)
+	{
+		SudokuFile sf = new SudokuFile(N, p, q);
+		int[] values = shuffledRange(N, random);
+		int[] rows = shuffledLines(N, p, random);
+		int[] cols = shuffledLines(N, q, random);
+		
+		int[][] tempBoard = new int[N][N];
+		for(int r = 0; r < N; r++)
+		{
+			for(int c = 0; c < N; c++)
+			{
+				int row = rows[r];
+				int col = cols[c];
+				tempBoard[r][c] = values[((row % p) * q + row / p + col) % N] + 1;
+			}
+		}
+		
+		int[] cells = shuffledRange(N * N, random);
+		for(int i = numAssignments; i < N * N; i++)
+		{
+			tempBoard[cells[i] / N][cells[i] % N] = 0;
+		}
+		sf.setBoard(tempBoard);
+		return sf;
+	}
+	
+	/**
+	 * @return 0..n-1 in random order
+	 */
+	private static int[] shuffledRange(int n, Random random)
+	{
+		int[] range = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			range[i] = i;
+		}
+		for(int i = n - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			int temp = range[i];
+			range[i] = range[j];
+			range[j] = temp;
+		}
+		return range;
+	}
+	
+	/**
+	 * @return 0..N-1 reordered so that lines stay within their group of <tt>groupSize</tt>, 
+	 * and whole groups are moved together
+	 */
+	private static int[] shuffledLines(int N, int groupSize, Random random)
+	{
+		int[] groups = shuffledRange(N / groupSize, random);
+		int[] lines = new int[N];
+		for(int g = 0; g < groups.length; g++)
+		{
+			int[] within = shuffledRange(groupSize, random);
+			for(int i = 0; i < groupSize; i++)
+			{
+				lines[g * groupSize + i] = groups[g] * groupSize + within[i];
+			}
+		}
+		return lines;
+	}
+
 	private static boolean checkConstraints(int row, int col, int value, SudokuFile sf, int[][] board)
 	{
 		if(checkRow(row, value, sf.getN(), board) 